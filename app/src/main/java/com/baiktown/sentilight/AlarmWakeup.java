@@ -0,0 +1,48 @@
+package com.baiktown.sentilight;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * AlarmManager 기반 SceneScheduler.Wakeup
+ * - 정확한 알람 권한이 있으면 setExactAndAllowWhileIdle (Doze 중에도 깨움)
+ * - 없으면 setWindow(at, windowMillis)로 시스템이 다른 알람과 묶어 깨우도록 허용
+ * - 알람은 SceneAlarmReceiver로 전달되어 scheduler.start()를 호출하므로 프로세스가 죽은 뒤에도 이어서 동작
+ *   (onWake Runnable은 프로세스 밖에서 유지될 수 없어 사용하지 않음)
+ */
+public class AlarmWakeup implements SceneScheduler.Wakeup {
+
+    static final String ACTION_SCENE_ALARM = "com.baiktown.sentilight.action.SCENE_ALARM";
+
+    private final Context context;
+    private final long windowMillis;
+
+    public AlarmWakeup(Context context, long windowMillis) {
+        this.context = context.getApplicationContext();
+        this.windowMillis = windowMillis;
+    }
+
+    @Override
+    public void setNext(long atMillis, Runnable onWake) {
+        AlarmManager alarmManager = context.getSystemService(AlarmManager.class);
+        PendingIntent pending = pendingIntent();
+        if (alarmManager.canScheduleExactAlarms()) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, atMillis, pending);
+        } else {
+            alarmManager.setWindow(AlarmManager.RTC_WAKEUP, atMillis, windowMillis, pending);
+        }
+    }
+
+    @Override
+    public void cancel() {
+        context.getSystemService(AlarmManager.class).cancel(pendingIntent());
+    }
+
+    private PendingIntent pendingIntent() {
+        Intent intent = new Intent(context, SceneAlarmReceiver.class).setAction(ACTION_SCENE_ALARM);
+        return PendingIntent.getBroadcast(context, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+}
@@ -0,0 +1,39 @@
+package com.baiktown.sentilight;
+
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+
+/** 실제 앱에서 사용하는 ControllerPlatform 구현 (메인스레드 콜백 + android.graphics.Color + Logcat) */
+public class AndroidPlatform implements ControllerPlatform {
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public Executor callbackExecutor() {
+        return mainHandler::post;
+    }
+
+    @Override
+    public int hsvToColor(float hue, float saturation, float value) {
+        return Color.HSVToColor(new float[]{hue, saturation, value});
+    }
+
+    @Override
+    public int parseColor(String colorString) {
+        return Color.parseColor(colorString);
+    }
+
+    @Override
+    public void logD(String tag, String msg) {
+        Log.d(tag, msg);
+    }
+
+    @Override
+    public void logE(String tag, String msg, Throwable tr) {
+        Log.e(tag, msg, tr);
+    }
+}
@@ -0,0 +1,316 @@
+package com.baiktown.sentilight;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 명령 이력 바이너리 로그 (고정 길이 레코드, append-only)
+ * - 컨트롤러 워커 경로에서 레코드당 48바이트를 재사용 버퍼로 한 번 write (할당/직렬화 비용 최소)
+ * - 세그먼트 파일이 maxSegmentBytes를 넘으면 다음 파일로 회전, maxSegments 개까지만 보관
+ * - 읽기는 세그먼트를 메모리 매핑해 RecordView가 버퍼 위치를 직접 읽음 (레코드 복사 없음)
+ *
+ * 세그먼트 형식: 헤더 16바이트(MAGIC, VERSION, RECORD_SIZE) + 레코드 배열 (little-endian)
+ * 비정상 종료로 잘린 마지막 레코드는 읽기 시 무시됩니다.
+ */
+public class CommandHistoryLog implements Closeable {
+
+    // 레코드 종류
+    public static final byte KIND_MOOD = 1;
+    public static final byte KIND_PRESET = 2;
+    public static final byte KIND_SCENE = 3;
+    public static final byte KIND_SCHEDULED = 4;
+
+    // 결과
+    public static final byte OUTCOME_SENT = 0;       // 장치 전송 성공
+    public static final byte OUTCOME_SIMULATED = 1;  // 시뮬레이션 모드 (전송 안 함)
+    public static final byte OUTCOME_FAILED = 2;
+
+    static final int MAGIC = 0x48434C53; // "SLCH"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 48;
+
+    // 레코드 필드 오프셋
+    private static final int OFF_TIMESTAMP = 0;   // long  epoch millis
+    private static final int OFF_MOOD_HASH = 8;   // long  FNV-1a 64 (프리셋은 0)
+    private static final int OFF_KIND = 16;       // byte
+    private static final int OFF_OUTCOME = 17;    // byte
+    private static final int OFF_HUE = 18;        // short (-1: 없음)
+    private static final int OFF_SATURATION = 20; // byte  (-1: 없음)
+    private static final int OFF_BRIGHTNESS = 21; // byte
+    private static final int OFF_DIMMER = 22;     // byte
+    // 23: 예약
+    private static final int OFF_CT = 24;         // short
+    // 26-27: 예약
+    private static final int OFF_QUEUE_US = 28;   // int   큐 대기
+    private static final int OFF_GEMINI_US = 32;  // int   Gemini 호출
+    private static final int OFF_TASMOTA_US = 36; // int   Tasmota 전송
+    private static final int OFF_TOTAL_US = 40;   // int   작업 전체
+    private static final int OFF_RESPONSE = 44;   // int   장치 응답 본문 해시 (없으면 0)
+
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".slh";
+
+    private static final Pattern HSB = Pattern.compile("HSBCOLOR\\s*(\\d+),(\\d+),(\\d+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern DIMMER = Pattern.compile("Dimmer\\s*(\\d+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CT = Pattern.compile("CT\\s*(\\d+)", Pattern.CASE_INSENSITIVE);
+
+    private final File dir;
+    private final long maxSegmentBytes;
+    private final int maxSegments;
+
+    private final ByteBuffer record = ByteBuffer.allocateDirect(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel channel;
+    private long segmentSize;
+    private int segmentIndex;
+
+    public CommandHistoryLog(File dir, long maxSegmentBytes, int maxSegments) throws IOException {
+        if (maxSegmentBytes < HEADER_SIZE + RECORD_SIZE || maxSegments < 1) {
+            throw new IllegalArgumentException("세그먼트 크기/개수가 너무 작습니다.");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("이력 디렉터리를 만들 수 없습니다: " + dir);
+        }
+        this.dir = dir;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegments = maxSegments;
+
+        // 재시작 시 마지막 세그먼트에 이어서 기록
+        File[] segments = listSegments(dir);
+        openSegment(segments.length == 0 ? 0 : segmentIndexOf(segments[segments.length - 1]));
+    }
+
+    // -------------------- 쓰기 --------------------
+    /** 레코드 1개 추가 (워커 스레드에서 호출, 여러 스레드 동시 호출 가능) */
+    public synchronized void append(long timestampMillis, byte kind, String mood, String command, byte outcome,
+                                    long queueWaitNanos, long geminiNanos, long tasmotaNanos, long totalNanos,
+                                    String deviceResponse) throws IOException {
+        if (channel == null) throw new IOException("이력 로그가 닫혀 있습니다.");
+        if (segmentSize + RECORD_SIZE > maxSegmentBytes) {
+            rotate();
+        }
+
+        int hue = -1, saturation = -1, brightness = -1, dimmer = -1, ct = -1;
+        if (command != null) {
+            Matcher m = HSB.matcher(command);
+            if (m.find()) {
+                hue = parseBounded(m.group(1), 359);
+                saturation = parseBounded(m.group(2), 100);
+                brightness = parseBounded(m.group(3), 100);
+            }
+            m = DIMMER.matcher(command);
+            if (m.find()) dimmer = parseBounded(m.group(1), 100);
+            m = CT.matcher(command);
+            if (m.find()) ct = parseBounded(m.group(1), 500);
+        }
+
+        record.clear();
+        record.putLong(OFF_TIMESTAMP, timestampMillis);
+        record.putLong(OFF_MOOD_HASH, mood != null ? moodHash(mood) : 0L);
+        record.put(OFF_KIND, kind);
+        record.put(OFF_OUTCOME, outcome);
+        record.putShort(OFF_HUE, (short) hue);
+        record.put(OFF_SATURATION, (byte) saturation);
+        record.put(OFF_BRIGHTNESS, (byte) brightness);
+        record.put(OFF_DIMMER, (byte) dimmer);
+        record.put(23, (byte) 0);
+        record.putShort(OFF_CT, (short) ct);
+        record.putShort(26, (short) 0);
+        record.putInt(OFF_QUEUE_US, toMicros(queueWaitNanos));
+        record.putInt(OFF_GEMINI_US, toMicros(geminiNanos));
+        record.putInt(OFF_TASMOTA_US, toMicros(tasmotaNanos));
+        record.putInt(OFF_TOTAL_US, toMicros(totalNanos));
+        record.putInt(OFF_RESPONSE, deviceResponse != null ? deviceResponse.hashCode() : 0);
+
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        segmentSize += RECORD_SIZE;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void rotate() throws IOException {
+        channel.close();
+        openSegment(segmentIndex + 1);
+
+        File[] segments = listSegments(dir);
+        for (int i = 0; i < segments.length - maxSegments; i++) {
+            //noinspection ResultOfMethodCallIgnored
+            segments[i].delete();
+        }
+    }
+
+    private void openSegment(int index) throws IOException {
+        File file = segmentFile(dir, index);
+        FileChannel ch = new RandomAccessFile(file, "rw").getChannel();
+        long size = ch.size();
+        if (size < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).flip();
+            ch.truncate(0);
+            ch.write(header, 0);
+            size = HEADER_SIZE;
+        } else {
+            // 잘린 마지막 레코드는 덮어씀
+            size = HEADER_SIZE + (size - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+            ch.truncate(size);
+        }
+        ch.position(size);
+        this.channel = ch;
+        this.segmentSize = size;
+        this.segmentIndex = index;
+    }
+
+    // -------------------- 읽기 --------------------
+    /** 레코드 방문자 (RecordView는 재사용되므로 visit 밖으로 보관하지 말 것) */
+    public interface RecordVisitor {
+        void visit(RecordView record);
+    }
+
+    /** 매핑된 세그먼트 위의 레코드 뷰 (필드 접근 시 버퍼에서 직접 읽음) */
+    public static final class RecordView {
+        private ByteBuffer buf;
+        private int base;
+
+        public long timestampMillis() { return buf.getLong(base + OFF_TIMESTAMP); }
+        public long moodHash() { return buf.getLong(base + OFF_MOOD_HASH); }
+        public byte kind() { return buf.get(base + OFF_KIND); }
+        public byte outcome() { return buf.get(base + OFF_OUTCOME); }
+        public int hue() { return buf.getShort(base + OFF_HUE); }
+        public int saturation() { return buf.get(base + OFF_SATURATION); }
+        public int brightness() { return buf.get(base + OFF_BRIGHTNESS); }
+        public int dimmer() { return buf.get(base + OFF_DIMMER); }
+        public int ct() { return buf.getShort(base + OFF_CT); }
+        public int queueWaitMicros() { return buf.getInt(base + OFF_QUEUE_US); }
+        public int geminiMicros() { return buf.getInt(base + OFF_GEMINI_US); }
+        public int tasmotaMicros() { return buf.getInt(base + OFF_TASMOTA_US); }
+        public int totalMicros() { return buf.getInt(base + OFF_TOTAL_US); }
+        public int responseHash() { return buf.getInt(base + OFF_RESPONSE); }
+
+        /** 저장된 필드로 Tasmota 명령 문자열 복원 (값이 없는(-1) 하위 명령은 생략, 모두 없으면 null) */
+        public String command() {
+            StringBuilder sb = new StringBuilder();
+            if (hue() >= 0) sb.append("HSBCOLOR ").append(hue()).append(',').append(saturation()).append(',').append(brightness());
+            if (dimmer() >= 0) sb.append(sb.length() > 0 ? ";" : "").append("Dimmer ").append(dimmer());
+            if (ct() >= 0) sb.append(sb.length() > 0 ? ";" : "").append("CT ").append(ct());
+            return sb.length() > 0 ? sb.toString() : null;
+        }
+    }
+
+    /**
+     * 오래된 세그먼트부터 모든 레코드를 순회합니다.
+     * 쓰기와 동시에 호출할 수 있으며, 각 세그먼트를 연 시점까지 기록된 레코드만 읽습니다.
+     * 순회 도중 회전으로 삭제된 세그먼트는 건너뜁니다.
+     */
+    public void forEach(RecordVisitor visitor) throws IOException {
+        forEach(dir, visitor);
+    }
+
+    public static void forEach(File dir, RecordVisitor visitor) throws IOException {
+        RecordView view = new RecordView();
+        for (File segment : listSegments(dir)) {
+            RandomAccessFile raf;
+            try {
+                raf = new RandomAccessFile(segment, "r");
+            } catch (FileNotFoundException e) {
+                continue; // 목록을 읽은 뒤 rotate()가 삭제한 세그먼트
+            }
+            try (FileChannel ch = raf.getChannel()) {
+                long size = ch.size();
+                if (size < HEADER_SIZE + RECORD_SIZE) continue;
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                if (buf.getInt(0) != MAGIC || buf.getShort(6) != RECORD_SIZE) continue; // 알 수 없는 형식
+
+                int count = (int) ((size - HEADER_SIZE) / RECORD_SIZE);
+                view.buf = buf;
+                for (int i = 0; i < count; i++) {
+                    view.base = HEADER_SIZE + i * RECORD_SIZE;
+                    visitor.visit(view);
+                }
+            }
+        }
+    }
+
+    /** 기분 해시별 요청 횟수 (자주 쓰는 기분 분석용) */
+    public Map<Long, Integer> moodFrequencies() throws IOException {
+        Map<Long, Integer> counts = new HashMap<>();
+        forEach(r -> {
+            if (r.kind() != KIND_PRESET && r.moodHash() != 0L) counts.merge(r.moodHash(), 1, Integer::sum);
+        });
+        return counts;
+    }
+
+    /** 기분 해시별 마지막 성공 명령 (시작 시 캐시 선적재용) */
+    public Map<Long, String> latestCommandByMood() throws IOException {
+        Map<Long, String> latest = new HashMap<>();
+        forEach(r -> {
+            if (r.kind() != KIND_PRESET && r.moodHash() != 0L && r.outcome() != OUTCOME_FAILED) {
+                String command = r.command();
+                if (command != null) latest.put(r.moodHash(), command);
+            }
+        });
+        return latest;
+    }
+
+    // -------------------- 내부 유틸 --------------------
+    /** 기분 문자열의 64비트 FNV-1a 해시 (앞뒤 공백 무시) */
+    public static long moodHash(String mood) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : mood.trim().getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static int parseBounded(String digits, int max) {
+        try {
+            return Math.min(Integer.parseInt(digits), max);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int toMicros(long nanos) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0L, nanos / 1000L));
+    }
+
+    private static File segmentFile(File dir, int index) {
+        return new File(dir, SEGMENT_PREFIX + String.format(Locale.ROOT, "%06d", index) + SEGMENT_SUFFIX);
+    }
+
+    private static int segmentIndexOf(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static File[] listSegments(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)
+                && name.length() == SEGMENT_PREFIX.length() + 6 + SEGMENT_SUFFIX.length());
+        if (files == null) return new File[0];
+        Arrays.sort(files); // 0 패딩 번호이므로 이름순 = 생성순
+        return files;
+    }
+}
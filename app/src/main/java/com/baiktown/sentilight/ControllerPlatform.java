@@ -0,0 +1,24 @@
+package com.baiktown.sentilight;
+
+import java.util.concurrent.Executor;
+
+/**
+ * TasmotaController가 사용하는 Android 전용 기능(Handler, Color, Log)의 최소 추상화
+ * - 앱에서는 AndroidPlatform 사용
+ * - 부하 테스트 하네스는 순수 JVM 구현을 주입해 Android 없이 실행
+ */
+public interface ControllerPlatform {
+
+    /** 콜백을 전달할 Executor (Android: 메인스레드 Handler) */
+    Executor callbackExecutor();
+
+    /** HSV(hue 0-359, saturation/value 0.0-1.0) → ARGB 정수 */
+    int hsvToColor(float hue, float saturation, float value);
+
+    /** "#RRGGBB" 형식 문자열 → ARGB 정수 */
+    int parseColor(String colorString);
+
+    void logD(String tag, String msg);
+
+    void logE(String tag, String msg, Throwable tr);
+}
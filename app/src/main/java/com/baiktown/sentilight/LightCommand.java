@@ -0,0 +1,81 @@
+package com.baiktown.sentilight;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 예약 가능한 Tasmota 조명 명령 (세미콜론으로 구분된 하위 명령 묶음, 불변)
+ * 예: "HSBCOLOR 60,100,100;Dimmer 70;CT 250", "CT 400"
+ */
+public final class LightCommand {
+
+    private final String command;
+
+    private LightCommand(String command) {
+        this.command = command;
+    }
+
+    /** 임의 명령 문자열 (허용 문자만 유지) */
+    public static LightCommand of(String raw) {
+        if (raw == null) throw new IllegalArgumentException("명령이 비어 있습니다.");
+        String cleaned = stripDisallowed(raw);
+        if (cleaned.replace(";", "").trim().isEmpty()) {
+            throw new IllegalArgumentException("유효한 명령이 없습니다: " + raw);
+        }
+        return new LightCommand(cleaned);
+    }
+
+    /** 색/밝기/색온도 전체 장면 (hue:0-359, saturation/brightness/Dimmer:0-100, CT:153-500 범위로 보정) */
+    public static LightCommand scene(int hue, int saturation, int brightness, int dimmer, int ct) {
+        return new LightCommand("HSBCOLOR " + clamp(hue, 0, 359) + "," + clamp(saturation, 0, 100) + ","
+                + clamp(brightness, 0, 100) + ";Dimmer " + clamp(dimmer, 0, 100) + ";CT " + clamp(ct, 153, 500));
+    }
+
+    /** 색온도만 변경 (CT: 153-500 범위로 보정) */
+    public static LightCommand ct(int ct) {
+        return new LightCommand("CT " + clamp(ct, 153, 500));
+    }
+
+    /**
+     * 공백 정리 + Tasmota 명령 허용 문자(영숫자, 쉼표, 세미콜론, 공백)만 유지 (TasmotaController와 공용)
+     * 하위 명령 구분자는 "a;b" 형태로 통일
+     */
+    static String stripDisallowed(String raw) {
+        return raw.trim().replaceAll("\\s+", " ").replaceAll("[^A-Za-z0-9,;\\s]", "")
+                .replaceAll("\\s*;\\s*", ";").trim();
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /** 하위 명령 목록 ("HSBCOLOR 1,2,3", "Dimmer 70", ...) */
+    public List<String> parts() {
+        List<String> parts = new ArrayList<>();
+        for (String p : command.split(";")) {
+            String trimmed = p.trim();
+            if (!trimmed.isEmpty()) parts.add(trimmed);
+        }
+        return Collections.unmodifiableList(parts);
+    }
+
+    public String command() {
+        return command;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof LightCommand && ((LightCommand) o).command.equals(command);
+    }
+
+    @Override
+    public int hashCode() {
+        return command.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return command;
+    }
+}
@@ -91,11 +91,16 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
 
 
         // TasmotaController 초기화
-        tasmotaController = new TasmotaController();
-        tasmotaController.setIsSimulating(true);
+        // 예약 알람 수신기와 같은 인스턴스(명령 이력 로그 포함)를 공유하고, 마지막으로 저장한 IP/모드를 복원
+        tasmotaController = SceneSchedulerHost.controller(this);
+        tasmotaIpAddress = SceneSchedulerHost.savedTasmotaIp(this);
+        tasmotaController.setIsSimulating(SceneSchedulerHost.savedSimulating(this));
         ipInputView.setText(tasmotaIpAddress);
         tasmotaController.setTasmotaIpAddress(tasmotaIpAddress);
 
+        // 예약 장면 재개 (놓친 예약 적용 + 다음 알람 등록), 프로세스당 한 번 백그라운드에서
+        SceneSchedulerHost.ensureStarted(this);
+
         // 권한 요청
         requestAudioPermission();
 
@@ -141,6 +146,7 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
             tasmotaIpAddress = currentIp;
             boolean newMode = !tasmotaController.isSimulating();
             tasmotaController.setIsSimulating(newMode);
+            SceneSchedulerHost.saveSettings(MainActivity.this, currentIp, newMode);
             updateModeButton(newMode);
             Toast.makeText(MainActivity.this, newMode ? "시뮬레이션 모드 활성화" : "실제 제어 모드 활성화", Toast.LENGTH_SHORT).show();
         });
@@ -0,0 +1,50 @@
+package com.baiktown.sentilight;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 예약 알람 / 부팅 완료 수신기
+ * - 저장된 타임라인을 다시 불러와 도래한 예약을 전송하고 다음 알람을 등록 (SceneScheduler.start)
+ * - 재부팅 시 AlarmManager 알람이 사라지므로 BOOT_COMPLETED에서도 같은 처리
+ * - 전송이 끝날 때까지 PendingResult를 유지해 프로세스가 중간에 정리되지 않도록 함
+ */
+public class SceneAlarmReceiver extends BroadcastReceiver {
+
+    private static final String TAG = "SceneAlarmReceiver";
+
+    // goAsync 수신기는 약 10초 안에 finish해야 하므로 그보다 짧게 대기
+    private static final long DISPATCH_TIMEOUT_MILLIS = 8_000L;
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent == null ? null : intent.getAction();
+        if (!AlarmWakeup.ACTION_SCENE_ALARM.equals(action) && !Intent.ACTION_BOOT_COMPLETED.equals(action)) {
+            Log.w(TAG, "처리하지 않는 action: " + action);
+            return;
+        }
+        final Context app = context.getApplicationContext();
+        final PendingResult pending = goAsync();
+        // 파일 I/O가 있으므로 메인스레드 밖에서 처리
+        new Thread(() -> {
+            try {
+                SceneSchedulerHost.scheduler(app).start().get(DISPATCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (IOException | ExecutionException e) {
+                Log.e(TAG, "예약 스케줄러 재개 실패", e);
+            } catch (TimeoutException e) {
+                Log.w(TAG, "예약 전송 응답 대기 시간 초과");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                pending.finish();
+            }
+        }, "SceneAlarmReceiver").start();
+    }
+}
@@ -0,0 +1,360 @@
+package com.baiktown.sentilight;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 장치(방)별 예약 조명 명령 타임라인 (서카디안 CT 변화, 예약 장면)
+ * - 폴링 없이 가장 이른 예약 시각 하나만 Wakeup에 등록
+ * - 깨어나면 coalesceWindowMillis 안에 도래하는 예약을 함께 처리하고, 장치별로 Backlog 명령 1개로 합쳐 전송
+ * - 타임라인을 stateFile(JSON)에 저장하므로 프로세스가 죽어도 start() 시 이어서 동작
+ *   (놓친 반복 예약은 각자의 마지막 도래 시각 순으로 합쳐 1회 적용, STALE_AFTER_MILLIS보다 오래된 1회성 예약은 버림)
+ * - 앱에서는 SceneSchedulerHost가 AlarmWakeup + sendRoomCommand로 구성해 사용
+ */
+public class SceneScheduler {
+
+    /** 현재 시각 (테스트에서는 가상 시계) */
+    public interface Clock {
+        long nowMillis();
+    }
+
+    /** 다음 깨어날 시각 하나만 유지하는 알람 (다시 호출하면 이전 예약을 대체) */
+    public interface Wakeup {
+        void setNext(long atMillis, Runnable onWake);
+        void cancel();
+    }
+
+    /** 합쳐진 명령을 장치로 전송 (반환 future는 전송이 끝나면 완료, 결과 성공/실패는 무관) */
+    public interface Dispatcher {
+        CompletableFuture<?> dispatch(String device, String backlogCommand);
+    }
+
+    private static final String TAG = "SceneScheduler";
+    static final long STALE_AFTER_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /** 저장/복원 단위 (Gson 직렬화) */
+    static final class Entry {
+        String id;
+        String device;
+        String command;
+        long nextAtMillis;
+        long repeatMillis; // 0이면 1회성
+        String localTime;  // 매일 반복: 지역 시각(ISO) + 시간대, DST가 바뀌어도 같은 벽시계 시각 유지
+        String zoneId;
+    }
+
+    private final Clock clock;
+    private final Wakeup wakeup;
+    private final Dispatcher dispatcher;
+    private final File stateFile;
+    private final long coalesceWindowMillis;
+    private final ControllerPlatform platform;
+    private final Gson gson = new Gson();
+
+    private final PriorityQueue<Entry> timeline =
+            new PriorityQueue<>((a, b) -> Long.compare(a.nextAtMillis, b.nextAtMillis));
+    private long armedAtMillis = Long.MIN_VALUE;
+    private boolean started;
+
+    public SceneScheduler(Clock clock, Wakeup wakeup, Dispatcher dispatcher, File stateFile, long coalesceWindowMillis,
+                          ControllerPlatform platform) {
+        this.clock = clock;
+        this.wakeup = wakeup;
+        this.dispatcher = dispatcher;
+        this.stateFile = stateFile;
+        this.coalesceWindowMillis = Math.max(0L, coalesceWindowMillis);
+        this.platform = platform;
+    }
+
+    // -------------------- 수명 주기 --------------------
+    /**
+     * 저장된 타임라인을 불러와 놓친 예약을 처리하고 다음 알람을 등록합니다.
+     * 반환 future는 이번에 보낸 전송이 모두 끝나면 완료됩니다 (알람 수신기가 프로세스를 유지할 때 사용).
+     */
+    public CompletableFuture<Void> start() throws IOException {
+        synchronized (this) {
+            timeline.clear();
+            timeline.addAll(load());
+            started = true;
+        }
+        return onWake();
+    }
+
+    public synchronized void stop() {
+        started = false;
+        wakeup.cancel();
+        armedAtMillis = Long.MIN_VALUE;
+    }
+
+    // -------------------- 예약 관리 --------------------
+    /**
+     * 예약 추가 (repeatMillis 0이면 1회성), 반환값은 취소용 id
+     * 저장에 실패하면 추가를 되돌리고 IOException을 던집니다.
+     */
+    public synchronized String schedule(String device, LightCommand command, long atMillis, long repeatMillis) throws IOException {
+        Entry e = newEntry(device, command);
+        e.nextAtMillis = atMillis;
+        e.repeatMillis = Math.max(0L, repeatMillis);
+        return add(e);
+    }
+
+    /** 매일 zone 기준 localTime에 반복되는 예약 (DST 전환 후에도 같은 지역 시각) */
+    public synchronized String scheduleDaily(String device, LightCommand command, LocalTime localTime, ZoneId zone) throws IOException {
+        Entry e = newEntry(device, command);
+        e.localTime = localTime.toString();
+        e.zoneId = zone.getId();
+        e.repeatMillis = DAY_MILLIS;
+        ZonedDateTime now = Instant.ofEpochMilli(clock.nowMillis()).atZone(zone);
+        long today = dailyAt(now.toLocalDate(), localTime, zone);
+        e.nextAtMillis = today > now.toInstant().toEpochMilli()
+                ? today
+                : dailyAt(now.toLocalDate().plusDays(1), localTime, zone);
+        return add(e);
+    }
+
+    /** 기본 서카디안 CT 곡선 (아침 중간, 낮 차갑게, 저녁 이후 점점 따뜻하게) */
+    public List<String> scheduleCircadian(String device, ZoneId zone) throws IOException {
+        List<String> ids = new ArrayList<>();
+        ids.add(scheduleDaily(device, LightCommand.ct(320), LocalTime.of(6, 30), zone));
+        ids.add(scheduleDaily(device, LightCommand.ct(220), LocalTime.of(9, 0), zone));
+        ids.add(scheduleDaily(device, LightCommand.ct(153), LocalTime.of(12, 0), zone));
+        ids.add(scheduleDaily(device, LightCommand.ct(250), LocalTime.of(17, 0), zone));
+        ids.add(scheduleDaily(device, LightCommand.ct(380), LocalTime.of(20, 0), zone));
+        ids.add(scheduleDaily(device, LightCommand.ct(500), LocalTime.of(22, 30), zone));
+        return ids;
+    }
+
+    /** 예약 취소, 저장에 실패하면 취소를 되돌리고 IOException을 던집니다. */
+    public synchronized boolean cancel(String id) throws IOException {
+        for (Iterator<Entry> it = timeline.iterator(); it.hasNext(); ) {
+            Entry e = it.next();
+            if (e.id.equals(id)) {
+                it.remove();
+                try {
+                    persist();
+                } catch (IOException ex) {
+                    timeline.add(e);
+                    throw ex;
+                }
+                rearm();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Entry newEntry(String device, LightCommand command) {
+        if (device == null || device.trim().isEmpty()) throw new IllegalArgumentException("장치 이름이 비어 있습니다.");
+        Entry e = new Entry();
+        e.id = UUID.randomUUID().toString();
+        e.device = device.trim();
+        e.command = command.command();
+        return e;
+    }
+
+    private String add(Entry e) throws IOException {
+        timeline.add(e);
+        try {
+            persist();
+        } catch (IOException ex) {
+            timeline.remove(e);
+            throw ex;
+        }
+        rearm();
+        return e.id;
+    }
+
+    /** 다음 깨어날 시각 (예약 없으면 -1) */
+    public synchronized long nextWakeupMillis() {
+        Entry head = timeline.peek();
+        return head != null ? head.nextAtMillis : -1L;
+    }
+
+    public synchronized int size() {
+        return timeline.size();
+    }
+
+    // -------------------- 깨어남 처리 --------------------
+    private CompletableFuture<Void> onWake() {
+        Map<String, LinkedHashMap<String, String>> byDevice = new LinkedHashMap<>();
+        synchronized (this) {
+            if (!started) return CompletableFuture.completedFuture(null);
+            armedAtMillis = Long.MIN_VALUE;
+            final long now = clock.nowMillis();
+            final long horizon = now + coalesceWindowMillis;
+
+            List<Entry> repeating = new ArrayList<>();
+            List<Fired> fired = new ArrayList<>();
+            while (!timeline.isEmpty() && timeline.peek().nextAtMillis <= horizon) {
+                Entry e = timeline.poll();
+                if (e.zoneId != null && e.localTime != null) {
+                    // 매일 반복: horizon 이전 마지막 회차를 적용하고 다음 날 같은 지역 시각으로 이동
+                    ZoneId zone = ZoneId.of(e.zoneId);
+                    LocalTime time = LocalTime.parse(e.localTime);
+                    LocalDate date = Instant.ofEpochMilli(horizon).atZone(zone).toLocalDate();
+                    long last = dailyAt(date, time, zone);
+                    if (last > horizon) {
+                        date = date.minusDays(1);
+                        last = dailyAt(date, time, zone);
+                    }
+                    fired.add(new Fired(e, Math.max(last, e.nextAtMillis)));
+                    e.nextAtMillis = dailyAt(date.plusDays(1), time, zone);
+                    repeating.add(e);
+                } else if (e.repeatMillis > 0) {
+                    // 여러 회차를 놓쳤으면 마지막 회차 시각 기준으로 적용하고, horizon 이후 첫 회차로 이동
+                    long missed = (horizon - e.nextAtMillis) / e.repeatMillis;
+                    fired.add(new Fired(e, e.nextAtMillis + missed * e.repeatMillis));
+                    e.nextAtMillis += (missed + 1) * e.repeatMillis;
+                    repeating.add(e);
+                } else if (e.nextAtMillis >= now - STALE_AFTER_MILLIS) {
+                    fired.add(new Fired(e, e.nextAtMillis));
+                }
+            }
+            timeline.addAll(repeating);
+
+            // 실제 도래 시각 순으로 합치며 같은 종류 하위 명령(CT, Dimmer...)은 나중 값이 이김
+            fired.sort((a, b) -> Long.compare(a.atMillis, b.atMillis));
+            for (Fired f : fired) {
+                LinkedHashMap<String, String> parts = byDevice.computeIfAbsent(f.entry.device, k -> new LinkedHashMap<>());
+                for (String part : LightCommand.of(f.entry.command).parts()) {
+                    String key = part.split(" ", 2)[0].toUpperCase();
+                    parts.remove(key);
+                    parts.put(key, part);
+                }
+            }
+
+            try {
+                persist();
+            } catch (IOException e) {
+                // 메모리상 타임라인으로 계속 동작하지만, 이대로 프로세스가 죽으면 이미 보낸 예약이 다시 적용될 수 있음
+                platform.logE(TAG, "예약 상태 저장 실패: " + stateFile, e);
+            }
+            rearm();
+        }
+
+        // 전송은 락 밖에서 (장치별 Backlog 1개)
+        List<CompletableFuture<?>> sends = new ArrayList<>();
+        for (Map.Entry<String, LinkedHashMap<String, String>> d : byDevice.entrySet()) {
+            if (d.getValue().isEmpty()) continue;
+            try {
+                CompletableFuture<?> send = dispatcher.dispatch(d.getKey(), "Backlog " + String.join("; ", d.getValue().values()));
+                if (send != null) sends.add(send);
+            } catch (RuntimeException e) {
+                platform.logE(TAG, "예약 전송 요청 실패 (장치: " + d.getKey() + ")", e);
+            }
+        }
+        return CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /** 이번 깨어남에서 적용할 예약과 그 회차의 도래 시각 */
+    private static final class Fired {
+        final Entry entry;
+        final long atMillis;
+
+        Fired(Entry entry, long atMillis) {
+            this.entry = entry;
+            this.atMillis = atMillis;
+        }
+    }
+
+    private void rearm() {
+        if (!started) return;
+        Entry head = timeline.peek();
+        if (head == null) {
+            wakeup.cancel();
+            armedAtMillis = Long.MIN_VALUE;
+        } else if (head.nextAtMillis != armedAtMillis) {
+            armedAtMillis = head.nextAtMillis;
+            wakeup.setNext(head.nextAtMillis, this::onWake);
+        }
+    }
+
+    // -------------------- 저장/복원 --------------------
+    private List<Entry> load() throws IOException {
+        if (stateFile == null || !stateFile.isFile()) return new ArrayList<>();
+        String json = new String(Files.readAllBytes(stateFile.toPath()), StandardCharsets.UTF_8);
+        try {
+            List<Entry> entries = gson.fromJson(json, new TypeToken<List<Entry>>() {}.getType());
+            List<Entry> valid = new ArrayList<>();
+            if (entries != null) {
+                for (Entry e : entries) {
+                    if (e != null && e.id != null && e.device != null && e.command != null) valid.add(e);
+                }
+            }
+            return valid;
+        } catch (JsonParseException e) {
+            throw new IOException("예약 상태 파일 파싱 실패: " + stateFile, e);
+        }
+    }
+
+    /** 임시 파일에 쓴 뒤 교체 (쓰는 도중 종료돼도 이전 상태 유지) */
+    private void persist() throws IOException {
+        if (stateFile == null) return;
+        File tmp = new File(stateFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp);
+             Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            gson.toJson(new ArrayList<>(timeline), writer);
+            writer.flush();
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(stateFile)) {
+            throw new IOException("예약 상태 저장 실패: " + stateFile);
+        }
+    }
+
+    /** date의 localTime (DST로 없는 시각이면 ZonedDateTime 규칙대로 뒤로 밀림) */
+    private static long dailyAt(LocalDate date, LocalTime localTime, ZoneId zone) {
+        return ZonedDateTime.of(date, localTime, zone).toInstant().toEpochMilli();
+    }
+
+    // -------------------- 기본 구현 --------------------
+    /** 시스템 시계 */
+    public static Clock systemClock() {
+        return System::currentTimeMillis;
+    }
+
+    /** ScheduledExecutorService 기반 Wakeup (예약 하나만 유지) */
+    public static Wakeup executorWakeup(ScheduledExecutorService executor, Clock clock) {
+        return new Wakeup() {
+            private ScheduledFuture<?> pending;
+
+            @Override
+            public synchronized void setNext(long atMillis, Runnable onWake) {
+                if (pending != null) pending.cancel(false);
+                pending = executor.schedule(onWake, Math.max(0L, atMillis - clock.nowMillis()), TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public synchronized void cancel() {
+                if (pending != null) pending.cancel(false);
+                pending = null;
+            }
+        };
+    }
+}
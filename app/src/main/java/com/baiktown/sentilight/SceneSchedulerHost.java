@@ -0,0 +1,158 @@
+package com.baiktown.sentilight;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 프로세스 단위로 공유하는 TasmotaController / SceneScheduler
+ * - MainActivity와 SceneAlarmReceiver가 같은 인스턴스를 사용
+ * - 알람으로 프로세스가 새로 뜬 경우에도 전송 설정(IP, 시뮬레이션 여부)을 SharedPreferences에서 복원
+ * - 명령 이력 로그도 프로세스 수명 동안 하나만 열어 컨트롤러에 연결 (Activity 수명과 무관)
+ */
+public final class SceneSchedulerHost {
+
+    private static final String TAG = "SceneSchedulerHost";
+
+    private static final String PREFS = "sentilight_settings";
+    private static final String KEY_TASMOTA_IP = "tasmota_ip";
+    private static final String KEY_SIMULATING = "simulating";
+    static final String DEFAULT_TASMOTA_IP = "192.168.0.9";
+
+    // 이 시간 안에 몰린 예약은 한 번 깨어나 장치별 Backlog 하나로 전송
+    private static final long COALESCE_WINDOW_MILLIS = 60_000L;
+    private static final String SCHEDULE_FILE = "scene_schedule.json";
+
+    // 명령 이력 로그 (세그먼트 1MB x 4개 보관)
+    private static final String HISTORY_DIR = "command_history";
+    private static final long HISTORY_SEGMENT_BYTES = 1024 * 1024;
+    private static final int HISTORY_MAX_SEGMENTS = 4;
+
+    private static TasmotaController controller;
+    private static SceneScheduler scheduler;
+    private static CommandHistoryLog historyLog;
+
+    // Activity 재생성마다 다시 시작하지 않도록 프로세스당 한 번만, 파일 I/O는 백그라운드에서
+    private static final AtomicBoolean started = new AtomicBoolean(false);
+    private static final ExecutorService startExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "SceneSchedulerStart");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private SceneSchedulerHost() {}
+
+    public static synchronized TasmotaController controller(Context context) {
+        if (controller == null) {
+            SharedPreferences prefs = prefs(context);
+            controller = new TasmotaController();
+            controller.setTasmotaIpAddress(prefs.getString(KEY_TASMOTA_IP, DEFAULT_TASMOTA_IP));
+            controller.setIsSimulating(prefs.getBoolean(KEY_SIMULATING, true));
+            controller.setCommandHistoryLog(historyLog(context));
+        }
+        return controller;
+    }
+
+    /** 프로세스 동안 열어 두는 명령 이력 로그, 열지 못하면 null (이력은 부가 기능) */
+    public static synchronized CommandHistoryLog historyLog(Context context) {
+        if (historyLog == null) {
+            try {
+                historyLog = new CommandHistoryLog(new File(context.getApplicationContext().getFilesDir(), HISTORY_DIR),
+                        HISTORY_SEGMENT_BYTES, HISTORY_MAX_SEGMENTS);
+            } catch (IOException e) {
+                Log.e(TAG, "명령 이력 로그 열기 실패", e);
+            }
+        }
+        return historyLog;
+    }
+
+    /** 알람으로 재시작된 프로세스에서도 같은 설정으로 전송하도록 저장 */
+    public static void saveSettings(Context context, String tasmotaIpAddress, boolean simulating) {
+        prefs(context).edit()
+                .putString(KEY_TASMOTA_IP, tasmotaIpAddress)
+                .putBoolean(KEY_SIMULATING, simulating)
+                .apply();
+    }
+
+    public static String savedTasmotaIp(Context context) {
+        return prefs(context).getString(KEY_TASMOTA_IP, DEFAULT_TASMOTA_IP);
+    }
+
+    public static boolean savedSimulating(Context context) {
+        return prefs(context).getBoolean(KEY_SIMULATING, true);
+    }
+
+    public static synchronized SceneScheduler scheduler(Context context) {
+        if (scheduler == null) {
+            Context app = context.getApplicationContext();
+            final TasmotaController c = controller(app);
+            scheduler = new SceneScheduler(
+                    SceneScheduler.systemClock(),
+                    new AlarmWakeup(app, COALESCE_WINDOW_MILLIS),
+                    (device, backlog) -> {
+                        CompletableFuture<Void> done = new CompletableFuture<>();
+                        c.sendRoomCommand(device, backlog, completing(done));
+                        return done;
+                    },
+                    new File(app.getFilesDir(), SCHEDULE_FILE),
+                    COALESCE_WINDOW_MILLIS,
+                    new AndroidPlatform());
+        }
+        return scheduler;
+    }
+
+    /** 앱 화면에서 호출: 프로세스당 한 번 백그라운드에서 스케줄러 재개 (실패하면 다음 호출에서 재시도) */
+    public static void ensureStarted(Context context) {
+        if (!started.compareAndSet(false, true)) return;
+        final Context app = context.getApplicationContext();
+        startExecutor.execute(() -> {
+            try {
+                scheduler(app).start();
+            } catch (IOException | RuntimeException e) {
+                started.set(false);
+                Log.e(TAG, "예약 스케줄러 재개 실패", e);
+            }
+        });
+    }
+
+    /** 예약 전송 결과는 화면이 없을 수 있으므로 로그로만 남김 */
+    private static final TasmotaController.ControllerCallback LOG_CALLBACK = new TasmotaController.ControllerCallback() {
+        @Override
+        public void onSuccess(String command, String tasmotaResponse, String geminiExplanation, int colorRgb) {
+            Log.d(TAG, geminiExplanation + ": " + command);
+        }
+
+        @Override
+        public void onFailure(String message) {
+            Log.e(TAG, "예약 전송 실패: " + message);
+        }
+    };
+
+    /** 결과를 로그로 남기고 전송이 끝났음을 done으로 알림 (성공/실패 모두 완료) */
+    private static TasmotaController.ControllerCallback completing(CompletableFuture<Void> done) {
+        return new TasmotaController.ControllerCallback() {
+            @Override
+            public void onSuccess(String command, String tasmotaResponse, String geminiExplanation, int colorRgb) {
+                LOG_CALLBACK.onSuccess(command, tasmotaResponse, geminiExplanation, colorRgb);
+                done.complete(null);
+            }
+
+            @Override
+            public void onFailure(String message) {
+                LOG_CALLBACK.onFailure(message);
+                done.complete(null);
+            }
+        };
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
@@ -2,20 +2,25 @@ package com.baiktown.sentilight;
 
 import com.baiktown.sentilight.BuildConfig;
 
-import android.os.Handler;
-import android.os.Looper;
-import android.util.Log;
-import android.graphics.Color; // 💡 HSB <-> RGB 변환을 위해 추가
-
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -30,6 +35,7 @@ import okhttp3.Response;
  * Android용 Tasmota + Gemini 제어 컨트롤러 (OkHttp 사용)
  * - Gemini: URL 쿼리 파라미터(?key=...) 방식
  * - Tasmota: HTTP GET /cm?cmnd=... (URL 인코딩 필수)
+ * - Handler/Color/Log는 ControllerPlatform으로 분리 (JVM 부하 테스트 하네스에서 헤드리스 실행 가능)
  */
 public class TasmotaController {
 
@@ -41,8 +47,12 @@ public class TasmotaController {
 //    private volatile String geminiModel = "gemini-1.5-flash-lite";
     private volatile String geminiModel = "gemini-2.5-flash-lite";
 
+    private volatile String geminiBaseUrl = "https://generativelanguage.googleapis.com/v1/";
+
     private volatile String tasmotaIpAddress = "192.168.0.9";
     private volatile boolean isSimulating = true;
+    // 방 이름 → Tasmota 주소 (배치 장면용, 없으면 tasmotaIpAddress 사용)
+    private final Map<String, String> roomAddresses = new ConcurrentHashMap<>();
     // ====================================================================
 
     private static final int WAITING_TIME = 20; // 초 단위
@@ -54,15 +64,49 @@ public class TasmotaController {
             .retryOnConnectionFailure(true)
             .build();
 
+    // 배치 장면 생성: 한 번의 Gemini 요청에 담을 예상 토큰 예산(입력+출력)과 최대 항목 수
+    static final int BATCH_TOKEN_BUDGET = 4096;
+    static final int BATCH_MAX_ITEMS = 16;
+    private static final int BATCH_OUTPUT_TOKENS_PER_ITEM = 80; // 항목당 JSON 응답 예상 토큰
+    private static final int BATCH_LLM_THREADS = 4;              // 동시에 진행할 배치 청크 Gemini 호출 수
+    private static final int DEVICE_THREADS = BATCH_MAX_ITEMS;   // 방별 전송 병렬도 (청크 하나가 한 번에 나가도록)
+
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
     private final Gson gson = new Gson();
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
-    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor;
+    private final ControllerPlatform platform;
+    private final Executor callbackExecutor; // 콜백 전달용 (Android: 메인스레드)
+    private volatile StageListener stageListener = new StageListener() {};
+    private volatile CommandHistoryLog historyLog; // null이면 이력 기록 안 함
+
+    // 배치 청크 Gemini 호출 전용 워커 / 방별 장치 전송 전용 워커
+    // (느린 LLM 호출이 장치 전송을 막지 않도록 분리, 유휴 시 스레드 종료)
+    private final ThreadPoolExecutor batchExecutor = newWorkerPool(BATCH_LLM_THREADS, "TasmotaController-batch");
+    private final ThreadPoolExecutor deviceExecutor = newWorkerPool(DEVICE_THREADS, "TasmotaController-device");
 
     /** BuildConfig의 API 키 초기화를 위한 생성자 */
     public TasmotaController() {
         // BuildConfig 값이 String 타입임을 가정하고 safeString(String s) 호출
-        this.apiKey = safeString(BuildConfig.SENTILIGHT_LLM_API_KEY);
+        this(BuildConfig.SENTILIGHT_LLM_API_KEY, new AndroidPlatform(), Executors.newSingleThreadExecutor());
+    }
+
+    /** 플랫폼/워커 주입 생성자 (JVM 부하 테스트 하네스 등 Android 외부 실행용) */
+    public TasmotaController(String apiKey, ControllerPlatform platform, ExecutorService executor) {
+        this.apiKey = safeString(apiKey);
+        this.platform = platform;
+        this.executor = executor;
+        this.callbackExecutor = platform.callbackExecutor();
+    }
+
+    private static ThreadPoolExecutor newWorkerPool(int threads, String name) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, name);
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
     }
 
     /** 결과 콜백 (메인스레드로 호출) */
@@ -72,24 +116,46 @@ public class TasmotaController {
         void onFailure(String message);
     }
 
+    /** 단계별 계측 리스너 (워커 스레드에서 호출, 기본 구현은 아무것도 하지 않음) */
+    public interface StageListener {
+        /** executor에서 작업이 시작될 때 호출 (queueWaitNanos: 제출 후 실행까지 대기 시간) */
+        default void onTaskStarted(long queueWaitNanos) {}
+        /** HTTP 재시도 직전에 호출 (stage: "gemini" 또는 "tasmota", attempt: 다음 시도 회차) */
+        default void onRetry(String stage, int attempt, IOException cause) {}
+    }
+
     // -------------------- 외부 설정자 (Setter/Getter) --------------------
     public void setIsSimulating(boolean simulating) { this.isSimulating = simulating; }
     public boolean isSimulating() { return this.isSimulating; }
     public void setTasmotaIpAddress(String ipAddress) { this.tasmotaIpAddress = ipAddress; }
     public void setApiKey(String apiKey) { this.apiKey = safeString(apiKey); }
     public void setGeminiModel(String model) { if (!isBlank(model)) this.geminiModel = model.trim(); }
+    public void setGeminiBaseUrl(String baseUrl) { if (!isBlank(baseUrl)) this.geminiBaseUrl = baseUrl.trim().endsWith("/") ? baseUrl.trim() : baseUrl.trim() + "/"; }
+    public void setStageListener(StageListener listener) { this.stageListener = (listener != null) ? listener : new StageListener() {}; }
+    public void setCommandHistoryLog(CommandHistoryLog log) { this.historyLog = log; }
+    public void setRoomAddress(String room, String ipAddress) {
+        if (isBlank(room)) return;
+        if (isBlank(ipAddress)) roomAddresses.remove(room.trim());
+        else roomAddresses.put(room.trim(), ipAddress.trim());
+    }
 
     // -------------------- 메인 진입점 --------------------
     public void processMoodAndControlLight(String moodText, ControllerCallback callback) {
+        final long enqueuedAt = System.nanoTime();
         executor.execute(() -> {
+            final long startedAt = System.nanoTime();
+            stageListener.onTaskStarted(startedAt - enqueuedAt);
             String fullGeminiResponse = null;
             String tasmotaCommand = null;
             String geminiExplanation = null;
             int finalColorRgb = 0; // 초기화
+            long geminiNanos = 0L;
+            long tasmotaNanos = 0L;
 
             try {
                 // 1) Gemini 호출 (기존 안정 로직 유지)
                 fullGeminiResponse = generateGeminiResponse(moodText);
+                geminiNanos = System.nanoTime() - startedAt;
                 if (isBlank(fullGeminiResponse)) {
                     throw new IOException("Gemini가 빈 응답을 반환했습니다.");
                 }
@@ -97,7 +163,7 @@ public class TasmotaController {
                 // 2) [COMMAND:], [EXPLANATION:] 파싱
                 tasmotaCommand = extractCommand(fullGeminiResponse);
                 geminiExplanation = extractExplanation(fullGeminiResponse, tasmotaCommand);
-                Log.d(TAG, "Gemini Command: " + tasmotaCommand);
+                platform.logD(TAG, "Gemini Command: " + tasmotaCommand);
 
                 // FIX 2: HSBCOLOR 명령에서 정수형 RGB 값 추출
                 finalColorRgb = convertHsbToRgb(tasmotaCommand);
@@ -105,14 +171,18 @@ public class TasmotaController {
 
                 // 3) 실제 전송 (시뮬레이션이면 스킵) (기존 로직 유지)
                 String tasmotaResponse = "시뮬레이션 모드(전송 안 함)";
+                byte outcome = CommandHistoryLog.OUTCOME_SIMULATED;
                 if (!isSimulating) {
                     ensureIpConfigured();
+                    final long sendStart = System.nanoTime();
 
                     // Tasmota 상태 체크 (선택 사항)
                     sendToTasmotaRaw("Status%2011", false);
 
                     String encoded = encodeCmndForUrl(tasmotaCommand);
                     tasmotaResponse = sendToTasmotaRaw(encoded, true);
+                    tasmotaNanos = System.nanoTime() - sendStart;
+                    outcome = CommandHistoryLog.OUTCOME_SENT;
                 }
 
                 final String fCmd = tasmotaCommand;
@@ -121,19 +191,268 @@ public class TasmotaController {
                 final int fRgb = finalColorRgb;
 
                 // FIX 3: 콜백에 색상 값 추가
-                mainHandler.post(() -> callback.onSuccess(fCmd, fResp, fExp, fRgb));
+                callbackExecutor.execute(() -> callback.onSuccess(fCmd, fResp, fExp, fRgb));
+                recordHistory(CommandHistoryLog.KIND_MOOD, moodText, tasmotaCommand, outcome,
+                        startedAt - enqueuedAt, geminiNanos, tasmotaNanos, System.nanoTime() - startedAt, tasmotaResponse);
 
             } catch (Exception e) {
-                Log.e(TAG, "조명 제어 오류", e);
+                platform.logE(TAG, "조명 제어 오류", e);
                 final String fCmd = (tasmotaCommand != null) ? tasmotaCommand : "N/A";
                 final String msg = "명령: " + fCmd + " / 오류: " + e.getMessage();
-                mainHandler.post(() -> callback.onFailure(msg));
+                callbackExecutor.execute(() -> callback.onFailure(msg));
+                recordHistory(CommandHistoryLog.KIND_MOOD, moodText, tasmotaCommand, CommandHistoryLog.OUTCOME_FAILED,
+                        startedAt - enqueuedAt, geminiNanos, tasmotaNanos, System.nanoTime() - startedAt, null);
             }
         });
     }
 
+    // -------------------- 배치 장면 생성 --------------------
+    /** 배치 항목: 방 이름 + 기분 + 항목별 결과 콜백 */
+    public static class SceneRequest {
+        public final String room;
+        public final String mood;
+        public final ControllerCallback callback;
+
+        public SceneRequest(String room, String mood, ControllerCallback callback) {
+            this.room = room;
+            this.mood = mood;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * 여러 (방, 기분) 쌍을 한 번의 generateContent 요청으로 변환하고, 방별 전송은 동시에 진행합니다.
+     * - 토큰 예산(BATCH_TOKEN_BUDGET)이나 BATCH_MAX_ITEMS를 넘으면 청크로 나누고, 청크끼리도 병렬 호출
+     * - 결과는 항목별 callback으로 전달 (메인스레드)
+     */
+    public void processScenes(List<SceneRequest> scenes) {
+        if (scenes == null || scenes.isEmpty()) return;
+        final long enqueuedAt = System.nanoTime();
+        for (List<SceneRequest> chunk : chunkScenes(scenes, BATCH_TOKEN_BUDGET, BATCH_MAX_ITEMS)) {
+            batchExecutor.execute(() -> {
+                final long startedAt = System.nanoTime();
+                stageListener.onTaskStarted(startedAt - enqueuedAt);
+                runSceneChunk(chunk, startedAt - enqueuedAt, startedAt);
+            });
+        }
+    }
+
+    private void runSceneChunk(List<SceneRequest> chunk, long queueWaitNanos, long startedAt) {
+        Map<Integer, JsonObject> items;
+        try {
+            String fullGeminiResponse = callGemini(buildBatchPrompt(chunk));
+            items = parseBatchResponse(fullGeminiResponse, chunk);
+        } catch (Exception e) {
+            platform.logE(TAG, "배치 장면 생성 오류", e);
+            final long elapsed = System.nanoTime() - startedAt;
+            for (SceneRequest scene : chunk) {
+                final String msg = "방: " + scene.room + " / 오류: " + e.getMessage();
+                callbackExecutor.execute(() -> scene.callback.onFailure(msg));
+                recordHistory(CommandHistoryLog.KIND_SCENE, scene.mood, null, CommandHistoryLog.OUTCOME_FAILED,
+                        queueWaitNanos, elapsed, 0L, elapsed, null);
+            }
+            return;
+        }
+        final long geminiNanos = System.nanoTime() - startedAt;
+
+        // 1회 파싱 결과를 방별로 동시에 전송
+        for (int i = 0; i < chunk.size(); i++) {
+            final SceneRequest scene = chunk.get(i);
+            final JsonObject item = items.get(i);
+            deviceExecutor.execute(() -> dispatchScene(scene, item, queueWaitNanos, geminiNanos, startedAt));
+        }
+    }
+
+    private void dispatchScene(SceneRequest scene, JsonObject item, long queueWaitNanos, long geminiNanos, long startedAt) {
+        String tasmotaCommand = null;
+        long tasmotaNanos = 0L;
+        try {
+            if (item == null) {
+                throw new IOException("배치 응답에 해당 방의 항목이 없습니다.");
+            }
+            tasmotaCommand = sanitizeCommand(jsonString(item, "command"));
+            String explanation = jsonString(item, "explanation");
+            if (isBlank(explanation)) {
+                explanation = tasmotaCommand + " 명령을 생성했습니다. (설명 없음)";
+            }
+            platform.logD(TAG, "Gemini Command [" + scene.room + "]: " + tasmotaCommand);
+
+            int finalColorRgb = convertHsbToRgb(tasmotaCommand);
+
+            // 배치에서는 왕복을 줄이기 위해 Status 체크(선택 사항)를 생략
+            String tasmotaResponse = "시뮬레이션 모드(전송 안 함)";
+            byte outcome = CommandHistoryLog.OUTCOME_SIMULATED;
+            if (!isSimulating) {
+                final long sendStart = System.nanoTime();
+                tasmotaResponse = sendToTasmotaRaw(resolveRoomAddress(scene.room), encodeCmndForUrl(tasmotaCommand), true);
+                tasmotaNanos = System.nanoTime() - sendStart;
+                outcome = CommandHistoryLog.OUTCOME_SENT;
+            }
+
+            final String fCmd = tasmotaCommand;
+            final String fExp = explanation;
+            final String fResp = tasmotaResponse;
+            callbackExecutor.execute(() -> scene.callback.onSuccess(fCmd, fResp, fExp, finalColorRgb));
+            recordHistory(CommandHistoryLog.KIND_SCENE, scene.mood, tasmotaCommand, outcome,
+                    queueWaitNanos, geminiNanos, tasmotaNanos, System.nanoTime() - startedAt, tasmotaResponse);
+
+        } catch (Exception e) {
+            platform.logE(TAG, "조명 제어 오류 (방: " + scene.room + ")", e);
+            final String fCmd = (tasmotaCommand != null) ? tasmotaCommand : "N/A";
+            final String msg = "방: " + scene.room + " / 명령: " + fCmd + " / 오류: " + e.getMessage();
+            callbackExecutor.execute(() -> scene.callback.onFailure(msg));
+            recordHistory(CommandHistoryLog.KIND_SCENE, scene.mood, tasmotaCommand, CommandHistoryLog.OUTCOME_FAILED,
+                    queueWaitNanos, geminiNanos, tasmotaNanos, System.nanoTime() - startedAt, null);
+        }
+    }
+
+    /** 공통 지시문은 한 번만, 항목은 한 줄씩 넣은 배치 프롬프트 */
+    private static String buildBatchPrompt(List<SceneRequest> chunk) {
+        StringBuilder sb = new StringBuilder(batchPromptHeader());
+        for (int i = 0; i < chunk.size(); i++) {
+            sb.append(batchPromptLine(i, chunk.get(i)));
+        }
+        return sb.toString();
+    }
+
+    private static String batchPromptHeader() {
+        return "아래 번호별 (방, 사용자 기분)을 각각 Tasmota 전구 제어 명령으로 변환하세요. " +
+                "결과는 JSON으로만 출력하세요: " +
+                "{\"scenes\":[{\"index\":번호,\"room\":\"방 이름 그대로\",\"command\":\"HSBCOLOR hue,saturation,brightness;Dimmer value;CT temperature\",\"explanation\":\"기분 변화에 대한 설명\"}]} " +
+                "(hue:0-359, saturation/brightness:0-100, Dimmer:0-100, CT:153-500). 모든 번호에 대해 하나씩 출력하세요.\n";
+    }
+
+    private static String batchPromptLine(int index, SceneRequest scene) {
+        return "#" + index + " 방: " + scene.room + " / 기분: '" + scene.mood + "'\n";
+    }
+
+    /** 예상 토큰 수로 배치를 나눔 (한 항목이 예산을 넘어도 단독 청크로 처리) */
+    static List<List<SceneRequest>> chunkScenes(List<SceneRequest> scenes, int tokenBudget, int maxItems) {
+        List<List<SceneRequest>> chunks = new ArrayList<>();
+        final int headerTokens = estimateTokens(batchPromptHeader());
+        List<SceneRequest> current = new ArrayList<>();
+        int used = headerTokens;
+        for (SceneRequest scene : scenes) {
+            int cost = estimateTokens(batchPromptLine(current.size(), scene)) + BATCH_OUTPUT_TOKENS_PER_ITEM;
+            if (!current.isEmpty() && (used + cost > tokenBudget || current.size() >= maxItems)) {
+                chunks.add(current);
+                current = new ArrayList<>();
+                used = headerTokens;
+            }
+            current.add(scene);
+            used += cost;
+        }
+        if (!current.isEmpty()) chunks.add(current);
+        return chunks;
+    }
+
+    /** 보수적 토큰 추정: ASCII 4자당 1토큰, 그 외(한글 등) 1자당 1토큰 */
+    static int estimateTokens(String text) {
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 0x80) ascii++; else other++;
+        }
+        return (ascii + 3) / 4 + other;
+    }
+
+    /** {"scenes":[{index, room, command, explanation}, ...]} 응답을 청크 위치 → 항목으로 한 번에 파싱 */
+    private Map<Integer, JsonObject> parseBatchResponse(String fullResponse, List<SceneRequest> chunk) throws IOException {
+        // 코드펜스(```json ...```) 등 앞뒤 잡음 제거
+        int start = fullResponse.indexOf('{');
+        int end = fullResponse.lastIndexOf('}');
+        if (start < 0 || end <= start) {
+            throw new IOException("배치 응답 파싱 실패(JSON 없음).");
+        }
+
+        JsonObject root;
+        try {
+            root = gson.fromJson(fullResponse.substring(start, end + 1), JsonObject.class);
+        } catch (JsonParseException e) {
+            throw new IOException("배치 응답 파싱 실패: " + e.getMessage(), e);
+        }
+        if (root == null || !root.has("scenes") || !root.get("scenes").isJsonArray()) {
+            throw new IOException("배치 응답에 scenes 배열이 없습니다.");
+        }
+
+        List<JsonObject> items = new ArrayList<>();
+        for (JsonElement e : root.getAsJsonArray("scenes")) {
+            if (e.isJsonObject()) items.add(e.getAsJsonObject());
+        }
+        return matchBatchItems(items, chunk);
+    }
+
+    /**
+     * 응답 항목을 청크 위치(0..n-1)에 대응시킵니다. 모델이 번호를 1부터 매기거나 중복하면
+     * 다른 방의 명령이 적용되므로, 확실한 대응이 없으면 해당 방은 실패로 처리합니다.
+     * 1) index가 정확히 0..n-1을 한 번씩 쓰면 index 사용
+     * 2) 아니면 되돌려 준 room이 청크의 방과 1:1로 맞으면 room 사용
+     * 3) 아니면 항목 수가 n과 같을 때만 배열 순서 사용
+     */
+    static Map<Integer, JsonObject> matchBatchItems(List<JsonObject> items, List<SceneRequest> chunk) {
+        final int n = chunk.size();
+
+        Map<Integer, JsonObject> byIndex = new HashMap<>();
+        for (JsonObject item : items) {
+            Integer index = null;
+            try {
+                if (item.has("index")) index = item.get("index").getAsInt();
+            } catch (RuntimeException ignored) {
+                // index 형식 오류 → 아래 대안 사용
+            }
+            if (index == null || index < 0 || index >= n || byIndex.putIfAbsent(index, item) != null) {
+                byIndex = null;
+                break;
+            }
+        }
+        if (byIndex != null && byIndex.size() == n) return byIndex;
+
+        Map<String, Integer> positionByRoom = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            String room = safeString(chunk.get(i).room).trim();
+            if (positionByRoom.put(room, i) != null) {
+                positionByRoom = null; // 청크 안에 같은 방이 있으면 room으로 구분 불가
+                break;
+            }
+        }
+        if (positionByRoom != null && items.size() == n) {
+            Map<Integer, JsonObject> byRoom = new HashMap<>();
+            for (JsonObject item : items) {
+                String room = jsonString(item, "room");
+                Integer position = (room != null) ? positionByRoom.get(room.trim()) : null;
+                if (position == null || byRoom.putIfAbsent(position, item) != null) {
+                    byRoom = null;
+                    break;
+                }
+            }
+            if (byRoom != null) return byRoom;
+        }
+
+        Map<Integer, JsonObject> byPosition = new HashMap<>();
+        if (items.size() == n) {
+            for (int i = 0; i < n; i++) byPosition.put(i, items.get(i));
+        }
+        return byPosition;
+    }
+
+    private static String jsonString(JsonObject obj, String name) {
+        JsonElement e = obj.get(name);
+        return (e != null && e.isJsonPrimitive()) ? e.getAsString() : null;
+    }
+
     // -------------------- Gemini 호출부 --------------------
     private String generateGeminiResponse(String userInput) throws IOException {
+        String prompt =
+                "사용자 기분: '" + userInput + "'. 이를 Tasmota 전구 제어 명령으로 변환하세요. " +
+                        "결과 형식은 [COMMAND: HSBCOLOR hue,saturation,brightness;Dimmer value;CT temperature] " +
+                        "[EXPLANATION: 기분 변화에 대한 설명] 으로만 출력하세요. " +
+                        "(hue:0-359, saturation/brightness:0-100, Dimmer:0-100, CT:153-500). " +
+                        "예: [COMMAND: HSBCOLOR 60,100,100;Dimmer 70;CT 250] [EXPLANATION: 밝고 따뜻한 노란색으로 활력을 줍니다.]";
+        return callGemini(prompt);
+    }
+
+    /** 단일 프롬프트로 generateContent 호출 (간단 재시도 포함) */
+    private String callGemini(String prompt) throws IOException {
         final String key = this.apiKey;
         if (isBlank(key)) {
             throw new IOException("Gemini API 키가 설정되지 않았습니다. setApiKey(...) 또는 BuildConfig 값을 확인하세요.");
@@ -145,18 +464,11 @@ public class TasmotaController {
                 : "models/" + this.geminiModel;
 
         // URL 구성 (API 키를 쿼리 파라미터로 추가)
-        final String base = "https://generativelanguage.googleapis.com/v1/" + modelName + ":generateContent";
+        final String base = this.geminiBaseUrl + modelName + ":generateContent";
 
         // Android 호환성을 위해 StandardCharsets.UTF_8.toString() 사용
         final String urlWithKey = base + "?key=" + URLEncoder.encode(key, StandardCharsets.UTF_8.toString());
 
-        String prompt =
-                "사용자 기분: '" + userInput + "'. 이를 Tasmota 전구 제어 명령으로 변환하세요. " +
-                        "결과 형식은 [COMMAND: HSBCOLOR hue,saturation,brightness;Dimmer value;CT temperature] " +
-                        "[EXPLANATION: 기분 변화에 대한 설명] 으로만 출력하세요. " +
-                        "(hue:0-359, saturation/brightness:0-100, Dimmer:0-100, CT:153-500). " +
-                        "예: [COMMAND: HSBCOLOR 60,100,100;Dimmer 70;CT 250] [EXPLANATION: 밝고 따뜻한 노란색으로 활력을 줍니다.]";
-
         // JSON 구성 (role: user)
         JsonObject part = new JsonObject();
         part.addProperty("text", prompt);
@@ -207,6 +519,7 @@ public class TasmotaController {
 
             } catch (IOException e) {
                 last = e;
+                if (attempt < 2) stageListener.onRetry("gemini", attempt + 1, e);
                 try { Thread.sleep(300L); } catch (InterruptedException ignored) {}
             }
         }
@@ -226,13 +539,13 @@ public class TasmotaController {
                 float s = Float.parseFloat(matcher.group(2)) / 100f; // Saturation (0.0 - 1.0)
                 float v = Float.parseFloat(matcher.group(3)) / 100f; // Value/Brightness (0.0 - 1.0)
 
-                return Color.HSVToColor(new float[]{h, s, v});
+                return platform.hsvToColor(h, s, v);
             }
         } catch (Exception e) {
-            Log.e(TAG, "HSB to RGB conversion failed in command: " + hsbCommand, e);
+            platform.logE(TAG, "HSB to RGB conversion failed in command: " + hsbCommand, e);
         }
         // 변환 실패 시 기본값 (약간 어두운 파란색, #181B1C)
-        return Color.parseColor("#181B1C");
+        return platform.parseColor("#181B1C");
     }
 
 
@@ -242,19 +555,22 @@ public class TasmotaController {
         Pattern pattern = Pattern.compile("\\[COMMAND:\\s*(.*?)\\]", Pattern.DOTALL);
         Matcher matcher = pattern.matcher(fullResponse);
         if (matcher.find() && matcher.group(1) != null) {
-            String raw = matcher.group(1).trim();
-            String cleaned = raw.replaceAll("\\s+", " ");
-            cleaned = cleaned.replaceAll("[^A-Za-z0-9,;\\s]", "");
-            if (!cleaned.toUpperCase().contains("HSBCOLOR")) {
-                // HSBCOLOR 명령이 없으면 기본값 설정 (Gemini가 포맷을 지키지 않았을 때)
-                return "HSBCOLOR 60,100,100;Dimmer 70;CT 250";
-            }
-            return cleaned;
+            return sanitizeCommand(matcher.group(1));
         }
         // 명령 자체를 찾지 못했으면 안전한 끄기 명령 반환
         return "HSBCOLOR 0,0,0;Dimmer 0;CT 500";
     }
 
+    /** 허용 문자만 유지 (단일/배치 응답 공용) */
+    private static String sanitizeCommand(String raw) {
+        String cleaned = LightCommand.stripDisallowed(safeString(raw));
+        if (!cleaned.toUpperCase().contains("HSBCOLOR")) {
+            // HSBCOLOR 명령이 없으면 기본값 설정 (Gemini가 포맷을 지키지 않았을 때)
+            return "HSBCOLOR 60,100,100;Dimmer 70;CT 250";
+        }
+        return cleaned;
+    }
+
     /** [EXPLANATION: ...] 블록에서 설명 추출 */
     private String extractExplanation(String fullResponse, String command) {
         Pattern pattern = Pattern.compile("\\[EXPLANATION:\\s*(.*?)\\]", Pattern.DOTALL);
@@ -272,9 +588,23 @@ public class TasmotaController {
         }
     }
 
+    /** 방 이름으로 장치 주소 조회 (미등록 방은 기본 tasmotaIpAddress) */
+    private String resolveRoomAddress(String room) throws IOException {
+        String address = (room != null) ? roomAddresses.get(room.trim()) : null;
+        if (isBlank(address)) address = this.tasmotaIpAddress;
+        if (isBlank(address)) {
+            throw new IOException("Tasmota IP 주소가 설정되지 않았습니다. (방: " + room + ")");
+        }
+        return address;
+    }
+
     /** 인코딩된 cmnd를 그대로 GET 호출 */
     private String sendToTasmotaRaw(String encodedCmnd, boolean throwOnNon200) throws IOException {
-        String url = "http://" + this.tasmotaIpAddress + "/cm?cmnd=" + encodedCmnd;
+        return sendToTasmotaRaw(this.tasmotaIpAddress, encodedCmnd, throwOnNon200);
+    }
+
+    private String sendToTasmotaRaw(String ipAddress, String encodedCmnd, boolean throwOnNon200) throws IOException {
+        String url = "http://" + ipAddress + "/cm?cmnd=" + encodedCmnd;
         Request req = new Request.Builder().url(url).get().build();
 
         // 간단 재시도
@@ -288,6 +618,7 @@ public class TasmotaController {
                 return body;
             } catch (IOException e) {
                 last = e;
+                if (attempt < 2) stageListener.onRetry("tasmota", attempt + 1, e);
                 try { Thread.sleep(200L); } catch (InterruptedException ignored) {}
             }
         }
@@ -300,29 +631,86 @@ public class TasmotaController {
         return URLEncoder.encode(rawCmnd, StandardCharsets.UTF_8);
     }
 
+    // -------------------- 예약 전송 (SceneScheduler → 방별 장치) --------------------
+    /** 방 장치로 명령(예: SceneScheduler가 합친 Backlog)을 그대로 전송, 장치 전송 풀(deviceExecutor)에서 실행 */
+    public void sendRoomCommand(String room, String command, ControllerCallback callback) {
+        final long enqueuedAt = System.nanoTime();
+        deviceExecutor.execute(() -> {
+            final long startedAt = System.nanoTime();
+            stageListener.onTaskStarted(startedAt - enqueuedAt);
+            try {
+                int finalColorRgb = convertHsbToRgb(command);
+
+                final boolean simulated = isSimulating;
+                String resp = simulated
+                        ? "시뮬레이션 모드(전송 안 함)"
+                        : sendToTasmotaRaw(resolveRoomAddress(room), encodeCmndForUrl(command), true);
+                final String fResp = resp;
+
+                callbackExecutor.execute(() -> callback.onSuccess(command, fResp, "예약 적용 (방: " + room + ")", finalColorRgb));
+                final long elapsed = System.nanoTime() - startedAt;
+                recordHistory(CommandHistoryLog.KIND_SCHEDULED, null, command,
+                        simulated ? CommandHistoryLog.OUTCOME_SIMULATED : CommandHistoryLog.OUTCOME_SENT,
+                        startedAt - enqueuedAt, 0L, simulated ? 0L : elapsed, elapsed, resp);
+            } catch (Exception e) {
+                platform.logE(TAG, "예약 전송 오류 (방: " + room + ")", e);
+                final String msg = "방: " + room + " / 명령: " + command + " / 오류: " + e.getMessage();
+                callbackExecutor.execute(() -> callback.onFailure(msg));
+                final long elapsed = System.nanoTime() - startedAt;
+                recordHistory(CommandHistoryLog.KIND_SCHEDULED, null, command, CommandHistoryLog.OUTCOME_FAILED,
+                        startedAt - enqueuedAt, 0L, elapsed, elapsed, null);
+            }
+        });
+    }
+
     // -------------------- 유틸: 프리셋 전송 --------------------
     public void sendPreset(String hsbc, int dimmer, int ct, ControllerCallback callback) {
         String cmd = "HSBCOLOR " + hsbc + ";Dimmer " + dimmer + ";CT " + ct;
+        final long enqueuedAt = System.nanoTime();
         executor.execute(() -> {
+            final long startedAt = System.nanoTime();
+            stageListener.onTaskStarted(startedAt - enqueuedAt);
             try {
                 // 색상 값 추출
                 int finalColorRgb = convertHsbToRgb(cmd);
 
-                String resp = isSimulating
+                final boolean simulated = isSimulating;
+                String resp = simulated
                         ? "시뮬레이션 모드(전송 안 함)"
                         : sendToTasmotaRaw(encodeCmndForUrl(cmd), true);
                 final String fResp = resp;
 
                 // 콜백에 색상 값 추가
-                mainHandler.post(() -> callback.onSuccess(cmd, fResp, "프리셋 적용", finalColorRgb));
+                callbackExecutor.execute(() -> callback.onSuccess(cmd, fResp, "프리셋 적용", finalColorRgb));
+                final long elapsed = System.nanoTime() - startedAt;
+                recordHistory(CommandHistoryLog.KIND_PRESET, null, cmd,
+                        simulated ? CommandHistoryLog.OUTCOME_SIMULATED : CommandHistoryLog.OUTCOME_SENT,
+                        startedAt - enqueuedAt, 0L, simulated ? 0L : elapsed, elapsed, resp);
             } catch (Exception e) {
                 final String msg = "명령: " + cmd + " / 오류: " + e.getMessage();
-                mainHandler.post(() -> callback.onFailure(msg));
+                callbackExecutor.execute(() -> callback.onFailure(msg));
+                final long elapsed = System.nanoTime() - startedAt;
+                recordHistory(CommandHistoryLog.KIND_PRESET, null, cmd, CommandHistoryLog.OUTCOME_FAILED,
+                        startedAt - enqueuedAt, 0L, elapsed, elapsed, null);
             }
         });
     }
 
     // -------------------- 내부 유틸 --------------------
+    /** 이력 로그가 설정된 경우에만 기록 (실패해도 제어 흐름에는 영향 없음) */
+    private void recordHistory(byte kind, String mood, String command, byte outcome,
+                               long queueWaitNanos, long geminiNanos, long tasmotaNanos, long totalNanos,
+                               String deviceResponse) {
+        final CommandHistoryLog log = this.historyLog;
+        if (log == null) return;
+        try {
+            log.append(System.currentTimeMillis(), kind, mood, command, outcome,
+                    queueWaitNanos, geminiNanos, tasmotaNanos, totalNanos, deviceResponse);
+        } catch (IOException e) {
+            platform.logE(TAG, "명령 이력 기록 실패", e);
+        }
+    }
+
     private static boolean isBlank(String s) {
         return s == null || s.trim().isEmpty();
     }
@@ -0,0 +1,192 @@
+package com.baiktown.sentilight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** processScenes: 여러 방을 한 번의 Gemini 호출로 생성하고 방별 장치로 동시 전송하는지 확인 */
+public class BatchScenesTest {
+
+    private static final int ROOMS = 5;
+
+    private MockGeminiServer gemini;
+    private MockTasmotaFleet fleet;
+    private JvmPlatform platform;
+    private ExecutorService worker;
+    private TasmotaController controller;
+
+    @Before
+    public void setUp() throws Exception {
+        gemini = new MockGeminiServer(LatencyModel.fixed(50), 0.0, 1L);
+        fleet = new MockTasmotaFleet(Collections.nCopies(ROOMS,
+                new MockTasmotaFleet.DeviceProfile(LatencyModel.fixed(20), 0.0)), 1L);
+        gemini.start();
+        fleet.start();
+        platform = new JvmPlatform(false);
+        worker = Executors.newSingleThreadExecutor();
+
+        controller = new TasmotaController("mock-key", platform, worker);
+        controller.setGeminiBaseUrl(gemini.baseUrl());
+        controller.setIsSimulating(false);
+        for (int i = 0; i < ROOMS; i++) {
+            controller.setRoomAddress("room-" + i, fleet.address(i));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        worker.shutdownNow();
+        platform.shutdown();
+        fleet.stop();
+        gemini.stop();
+    }
+
+    @Test
+    public void processScenes_usesOneLlmCallAndDispatchesEveryRoom() throws Exception {
+        CountDownLatch done = new CountDownLatch(ROOMS);
+        AtomicInteger ok = new AtomicInteger();
+        List<String> commands = Collections.synchronizedList(new ArrayList<>());
+
+        List<TasmotaController.SceneRequest> scenes = new ArrayList<>();
+        for (int i = 0; i < ROOMS; i++) {
+            scenes.add(new TasmotaController.SceneRequest("room-" + i, "기분 " + i, new TasmotaController.ControllerCallback() {
+                @Override
+                public void onSuccess(String command, String tasmotaResponse, String geminiExplanation, int colorRgb) {
+                    commands.add(command);
+                    ok.incrementAndGet();
+                    done.countDown();
+                }
+
+                @Override
+                public void onFailure(String message) {
+                    done.countDown();
+                }
+            }));
+        }
+
+        controller.processScenes(scenes);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(ROOMS, ok.get());
+        assertEquals(1, gemini.requestCount());
+        for (int i = 0; i < ROOMS; i++) {
+            assertEquals(1, fleet.commandCount(i));
+        }
+        for (String command : commands) {
+            assertTrue(command.startsWith("HSBCOLOR "));
+        }
+    }
+
+    @Test
+    public void shiftedIndices_withEchoedRoom_matchByRoom() throws Exception {
+        gemini.setBatchIndexOffset(1); // 모델이 1부터 번호를 매김
+        assertEachRoomGotItsOwnCommand(runScenes());
+    }
+
+    @Test
+    public void shiftedIndices_withoutRoom_fallBackToPosition() throws Exception {
+        gemini.setBatchIndexOffset(1);
+        gemini.setEchoBatchRoom(false);
+        assertEachRoomGotItsOwnCommand(runScenes());
+    }
+
+    @Test
+    public void matchBatchItems_rejectsAmbiguousResponses() {
+        List<TasmotaController.SceneRequest> chunk = new ArrayList<>();
+        for (int i = 0; i < 3; i++) chunk.add(new TasmotaController.SceneRequest("room-" + i, "기분", null));
+
+        // 중복 index + room 없음 + 항목 수 부족 → 어떤 방에도 대응하지 않음
+        List<JsonObject> items = new ArrayList<>();
+        items.add(item(0, null));
+        items.add(item(0, null));
+        assertEquals(0, TasmotaController.matchBatchItems(items, chunk).size());
+
+        // 중복 index 이지만 room이 1:1로 맞으면 room 사용
+        items.add(item(0, null));
+        items.get(0).addProperty("room", "room-2");
+        items.get(1).addProperty("room", "room-0");
+        items.get(2).addProperty("room", "room-1");
+        Map<Integer, JsonObject> byRoom = TasmotaController.matchBatchItems(items, chunk);
+        assertEquals("room-0", byRoom.get(0).get("room").getAsString());
+        assertEquals("room-2", byRoom.get(2).get("room").getAsString());
+
+        // 범위 밖 index 는 정상 index 로 취급하지 않음
+        List<JsonObject> outOfRange = new ArrayList<>();
+        outOfRange.add(item(5, null));
+        assertNull(TasmotaController.matchBatchItems(outOfRange, chunk).get(5));
+    }
+
+    private static JsonObject item(int index, String room) {
+        JsonObject o = new JsonObject();
+        o.addProperty("index", index);
+        if (room != null) o.addProperty("room", room);
+        o.addProperty("command", "HSBCOLOR 1,1,1;Dimmer 1;CT 153");
+        return o;
+    }
+
+    /** 방 이름 → 받은 명령 */
+    private Map<String, String> runScenes() throws Exception {
+        CountDownLatch done = new CountDownLatch(ROOMS);
+        Map<String, String> byRoom = new ConcurrentHashMap<>();
+        List<TasmotaController.SceneRequest> scenes = new ArrayList<>();
+        for (int i = 0; i < ROOMS; i++) {
+            final String room = "room-" + i;
+            scenes.add(new TasmotaController.SceneRequest(room, "기분 " + i, new TasmotaController.ControllerCallback() {
+                @Override
+                public void onSuccess(String command, String tasmotaResponse, String geminiExplanation, int colorRgb) {
+                    byRoom.put(room, command);
+                    done.countDown();
+                }
+
+                @Override
+                public void onFailure(String message) {
+                    done.countDown();
+                }
+            }));
+        }
+        controller.processScenes(scenes);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return byRoom;
+    }
+
+    private static void assertEachRoomGotItsOwnCommand(Map<String, String> byRoom) {
+        assertEquals(ROOMS, byRoom.size());
+        for (int i = 0; i < ROOMS; i++) {
+            assertEquals(MockGeminiServer.commandFor("room-" + i + "기분 " + i), byRoom.get("room-" + i));
+        }
+    }
+
+    @Test
+    public void chunkScenes_splitsByItemLimitAndTokenBudget() {
+        List<TasmotaController.SceneRequest> scenes = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            scenes.add(new TasmotaController.SceneRequest("room-" + i, "편안한 저녁", null));
+        }
+
+        List<List<TasmotaController.SceneRequest>> byItems = TasmotaController.chunkScenes(scenes, Integer.MAX_VALUE, 16);
+        assertEquals(3, byItems.size());
+        assertEquals(16, byItems.get(0).size());
+        assertEquals(8, byItems.get(2).size());
+
+        // 아주 작은 예산에서도 항목은 최소 하나씩 청크에 담김
+        List<List<TasmotaController.SceneRequest>> byTokens = TasmotaController.chunkScenes(scenes, 1, 16);
+        assertEquals(40, byTokens.size());
+    }
+}
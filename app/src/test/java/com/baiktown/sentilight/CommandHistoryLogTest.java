@@ -0,0 +1,150 @@
+package com.baiktown.sentilight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CommandHistoryLogTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void appendThenRead_roundTripsFixedFields() throws Exception {
+        File dir = tmp.newFolder("history");
+        try (CommandHistoryLog log = new CommandHistoryLog(dir, 1024 * 1024, 2)) {
+            log.append(1_000L, CommandHistoryLog.KIND_MOOD, "피곤해", "HSBCOLOR 30,80,40;Dimmer 35;CT 450",
+                    CommandHistoryLog.OUTCOME_SENT, 2_000L, 150_000_000L, 12_000_000L, 165_000_000L, "{\"POWER\":\"ON\"}");
+            log.append(2_000L, CommandHistoryLog.KIND_PRESET, null, "HSBCOLOR 0,0,100;Dimmer 100;CT 153",
+                    CommandHistoryLog.OUTCOME_FAILED, 0L, 0L, 5_000_000L, 5_000_000L, null);
+        }
+
+        List<String> seen = new ArrayList<>();
+        CommandHistoryLog.forEach(dir, r -> seen.add(r.timestampMillis() + "|" + r.kind() + "|" + r.outcome() + "|"
+                + r.command() + "|" + r.queueWaitMicros() + "|" + r.geminiMicros() + "|" + r.tasmotaMicros() + "|" + r.totalMicros()));
+
+        assertEquals(2, seen.size());
+        assertEquals("1000|1|0|HSBCOLOR 30,80,40;Dimmer 35;CT 450|2|150000|12000|165000", seen.get(0));
+        assertEquals("2000|2|2|HSBCOLOR 0,0,100;Dimmer 100;CT 153|0|0|5000|5000", seen.get(1));
+    }
+
+    @Test
+    public void partialCommands_roundTripWithoutMissingFields() throws Exception {
+        File dir = tmp.newFolder("history");
+        try (CommandHistoryLog log = new CommandHistoryLog(dir, 1024 * 1024, 2)) {
+            log.append(1L, CommandHistoryLog.KIND_MOOD, "hsb", "HSBCOLOR 60,100,100",
+                    CommandHistoryLog.OUTCOME_SENT, 0L, 0L, 0L, 0L, null);
+            log.append(2L, CommandHistoryLog.KIND_MOOD, "ct", "CT 300",
+                    CommandHistoryLog.OUTCOME_SENT, 0L, 0L, 0L, 0L, null);
+            log.append(3L, CommandHistoryLog.KIND_MOOD, "none", "Power ON",
+                    CommandHistoryLog.OUTCOME_SENT, 0L, 0L, 0L, 0L, null);
+
+            Map<Long, String> latest = log.latestCommandByMood();
+            assertEquals("HSBCOLOR 60,100,100", latest.get(CommandHistoryLog.moodHash("hsb")));
+            assertEquals("CT 300", latest.get(CommandHistoryLog.moodHash("ct")));
+            assertNull(latest.get(CommandHistoryLog.moodHash("none")));
+        }
+    }
+
+    @Test
+    public void rotatesBySize_andKeepsOnlyNewestSegments() throws Exception {
+        File dir = tmp.newFolder("history");
+        long segmentBytes = CommandHistoryLog.HEADER_SIZE + 10L * CommandHistoryLog.RECORD_SIZE;
+        try (CommandHistoryLog log = new CommandHistoryLog(dir, segmentBytes, 3)) {
+            for (int i = 0; i < 45; i++) {
+                log.append(i, CommandHistoryLog.KIND_MOOD, "mood " + (i % 3), "HSBCOLOR 1,2,3;Dimmer 4;CT 200",
+                        CommandHistoryLog.OUTCOME_SIMULATED, 0L, 0L, 0L, 0L, null);
+            }
+        }
+
+        File[] segments = dir.listFiles();
+        assertEquals(3, segments.length);
+
+        List<Long> timestamps = new ArrayList<>();
+        CommandHistoryLog.forEach(dir, r -> timestamps.add(r.timestampMillis()));
+        // 45건 중 가장 오래된 두 세그먼트(20건)는 삭제되고 20..44 가 남음
+        assertEquals(25, timestamps.size());
+        assertEquals(20L, (long) timestamps.get(0));
+        assertEquals(44L, (long) timestamps.get(24));
+    }
+
+    @Test
+    public void readWhileRotating_skipsDeletedSegments() throws Exception {
+        File dir = tmp.newFolder("history");
+        long segmentBytes = CommandHistoryLog.HEADER_SIZE + 2L * CommandHistoryLog.RECORD_SIZE;
+        try (CommandHistoryLog log = new CommandHistoryLog(dir, segmentBytes, 2)) {
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicReference<Throwable> writerError = new AtomicReference<>();
+            Thread writer = new Thread(() -> {
+                long i = 0;
+                while (running.get()) {
+                    try {
+                        log.append(i++, CommandHistoryLog.KIND_MOOD, "mood", "HSBCOLOR 1,2,3;Dimmer 4;CT 200",
+                                CommandHistoryLog.OUTCOME_SENT, 0L, 0L, 0L, 0L, null);
+                    } catch (Throwable t) {
+                        writerError.set(t);
+                        return;
+                    }
+                }
+            });
+            writer.start();
+
+            AtomicInteger scans = new AtomicInteger();
+            try {
+                long deadline = System.currentTimeMillis() + 500;
+                while (System.currentTimeMillis() < deadline) {
+                    Map<Long, Integer> freq = log.moodFrequencies(); // 회전 중 삭제돼도 예외 없이 계속
+                    Integer count = freq.get(CommandHistoryLog.moodHash("mood"));
+                    // 보관 세그먼트 2개 + 새 세그먼트 = 최대 6건
+                    if (count != null && count > 6) throw new AssertionError("too many records: " + count);
+                    scans.incrementAndGet();
+                }
+            } finally {
+                running.set(false);
+                writer.join();
+            }
+            assertNull(writerError.get());
+            assertTrue(scans.get() > 0);
+        }
+    }
+
+    @Test
+    public void reopen_appendsAfterTruncatedTail() throws Exception {
+        File dir = tmp.newFolder("history");
+        try (CommandHistoryLog log = new CommandHistoryLog(dir, 1024 * 1024, 2)) {
+            log.append(1L, CommandHistoryLog.KIND_MOOD, "a", "HSBCOLOR 1,1,1;Dimmer 1;CT 153",
+                    CommandHistoryLog.OUTCOME_SENT, 0L, 0L, 0L, 0L, null);
+        }
+        // 비정상 종료로 레코드가 중간에 잘린 상황
+        File segment = dir.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(raf.length());
+            raf.write(new byte[7]);
+        }
+
+        try (CommandHistoryLog log = new CommandHistoryLog(dir, 1024 * 1024, 2)) {
+            log.append(2L, CommandHistoryLog.KIND_MOOD, "a", "HSBCOLOR 2,2,2;Dimmer 2;CT 154",
+                    CommandHistoryLog.OUTCOME_SENT, 0L, 0L, 0L, 0L, null);
+
+            Map<Long, Integer> freq = log.moodFrequencies();
+            assertEquals(Integer.valueOf(2), freq.get(CommandHistoryLog.moodHash("a")));
+            Map<Long, String> latest = log.latestCommandByMood();
+            assertEquals("HSBCOLOR 2,2,2;Dimmer 2;CT 154", latest.get(CommandHistoryLog.moodHash(" a ")));
+            assertNull(latest.get(CommandHistoryLog.moodHash("b")));
+        }
+        assertEquals(CommandHistoryLog.HEADER_SIZE + 2L * CommandHistoryLog.RECORD_SIZE, segment.length());
+    }
+}
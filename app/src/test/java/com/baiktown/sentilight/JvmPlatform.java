@@ -0,0 +1,55 @@
+package com.baiktown.sentilight;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 순수 JVM용 ControllerPlatform (부하 테스트 하네스 전용)
+ * - 콜백은 단일 "main" 스레드에서 실행해 Android 메인 Looper와 같은 직렬화 특성을 흉내 냄
+ * - 색 변환은 java.awt.Color(헤드리스에서도 동작)로 계산
+ */
+public class JvmPlatform implements ControllerPlatform {
+
+    private final ExecutorService mainThread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "jvm-main-looper");
+        t.setDaemon(true);
+        return t;
+    });
+    private final boolean verbose;
+
+    public JvmPlatform(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    @Override
+    public ExecutorService callbackExecutor() {
+        return mainThread;
+    }
+
+    @Override
+    public int hsvToColor(float hue, float saturation, float value) {
+        // Android Color.HSVToColor와 동일하게 alpha = 0xFF
+        return 0xFF000000 | java.awt.Color.HSBtoRGB(hue / 360f, saturation, value);
+    }
+
+    @Override
+    public int parseColor(String colorString) {
+        String hex = colorString.startsWith("#") ? colorString.substring(1) : colorString;
+        int argb = (int) Long.parseLong(hex, 16);
+        return hex.length() == 6 ? (0xFF000000 | argb) : argb;
+    }
+
+    @Override
+    public void logD(String tag, String msg) {
+        if (verbose) System.out.println("D/" + tag + ": " + msg);
+    }
+
+    @Override
+    public void logE(String tag, String msg, Throwable tr) {
+        if (verbose) System.err.println("E/" + tag + ": " + msg + (tr != null ? " / " + tr : ""));
+    }
+
+    public void shutdown() {
+        mainThread.shutdown();
+    }
+}
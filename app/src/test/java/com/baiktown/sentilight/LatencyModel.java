@@ -0,0 +1,22 @@
+package com.baiktown.sentilight;
+
+import java.util.Random;
+
+/** 목 서버 응답 지연 분포 (밀리초) */
+public interface LatencyModel {
+
+    long nextDelayMillis(Random random);
+
+    static LatencyModel fixed(long millis) {
+        return random -> millis;
+    }
+
+    static LatencyModel uniform(long minMillis, long maxMillis) {
+        return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+    }
+
+    /** 중앙값 medianMillis, 로그 표준편차 sigma 의 로그정규 분포 (LLM 응답처럼 꼬리가 긴 지연) */
+    static LatencyModel logNormal(long medianMillis, double sigma) {
+        return random -> (long) (medianMillis * Math.exp(sigma * random.nextGaussian()));
+    }
+}
@@ -0,0 +1,223 @@
+package com.baiktown.sentilight;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TasmotaController 엔드투엔드 부하/지연 측정 하네스 (순수 JVM, Android 불필요)
+ * - 로컬 MockGeminiServer + MockTasmotaFleet 에 대해 장치별 컨트롤러를 실제 전송 모드로 구동
+ * - 요청을 한꺼번에(burst) 제출하고 처리량, 엔드투엔드/큐 대기 백분위, 스레드 사용량, 재시도 횟수를 보고
+ *
+ * 실행 예: LoadHarness.main(new String[]{"8", "400"})  → 장치 8대, 요청 400건
+ */
+public class LoadHarness {
+
+    private static final String[] MOODS = {
+            "오늘 너무 피곤해", "기분이 최고야", "차분하게 책 읽고 싶어", "파티 분위기",
+            "조금 우울해", "집중해서 공부해야 해", "잠들기 전이야", "비 오는 날 감성"
+    };
+    private static final String[] PRESETS = {"60,100,100", "200,80,60", "0,0,100", "30,90,40"};
+
+    /** 하네스 설정 (기본값은 실제 앱과 같은 컨트롤러당 워커 1개) */
+    public static class Config {
+        public int devices = 4;
+        public int requests = 100;
+        public double presetRatio = 0.25;          // 전체 요청 중 sendPreset 비율
+        public int workersPerController = 1;
+        public LatencyModel geminiLatency = LatencyModel.logNormal(40, 0.5);
+        public double geminiErrorRate = 0.05;
+        public LatencyModel deviceLatency = LatencyModel.uniform(2, 15);
+        public double deviceFailureRate = 0.02;
+        public long seed = 42L;
+        public long timeoutSeconds = 120;
+        public boolean verbose = false;
+    }
+
+    /** 실행 결과 */
+    public static class Report {
+        public int submitted;
+        public int succeeded;
+        public int failed;
+        public long wallMillis;
+        public double throughputPerSec;
+        public long[] endToEndMillis;   // 정렬됨
+        public long[] queueWaitMillis;  // 정렬됨
+        public int geminiRetries;
+        public int tasmotaRetries;
+        public int workerThreadsUsed;
+        public int peakJvmThreads;
+        public int geminiRequests;
+        public int geminiErrors;
+        public int deviceCommands;
+        public int deviceFailures;
+
+        public long endToEndPercentile(double p) { return percentile(endToEndMillis, p); }
+        public long queueWaitPercentile(double p) { return percentile(queueWaitMillis, p); }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "requests=%d ok=%d fail=%d wall=%dms throughput=%.1f/s%n" +
+                    "e2e ms    p50=%d p90=%d p99=%d max=%d%n" +
+                    "queue ms  p50=%d p90=%d p99=%d max=%d%n" +
+                    "retries   gemini=%d tasmota=%d%n" +
+                    "threads   workers=%d peakJvm=%d%n" +
+                    "mock      gemini=%d (errors %d) device=%d (failures %d)",
+                    submitted, succeeded, failed, wallMillis, throughputPerSec,
+                    endToEndPercentile(50), endToEndPercentile(90), endToEndPercentile(99), endToEndPercentile(100),
+                    queueWaitPercentile(50), queueWaitPercentile(90), queueWaitPercentile(99), queueWaitPercentile(100),
+                    geminiRetries, tasmotaRetries,
+                    workerThreadsUsed, peakJvmThreads,
+                    geminiRequests, geminiErrors, deviceCommands, deviceFailures);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config = new Config();
+        if (args.length > 0) config.devices = Integer.parseInt(args[0]);
+        if (args.length > 1) config.requests = Integer.parseInt(args[1]);
+        if (args.length > 2) config.workersPerController = Integer.parseInt(args[2]);
+        System.out.println(run(config));
+    }
+
+    public static Report run(Config config) throws Exception {
+        List<MockTasmotaFleet.DeviceProfile> profiles = new ArrayList<>();
+        for (int i = 0; i < config.devices; i++) {
+            profiles.add(new MockTasmotaFleet.DeviceProfile(config.deviceLatency, config.deviceFailureRate));
+        }
+        MockGeminiServer gemini = new MockGeminiServer(config.geminiLatency, config.geminiErrorRate, config.seed);
+        MockTasmotaFleet fleet = new MockTasmotaFleet(profiles, config.seed);
+        JvmPlatform platform = new JvmPlatform(config.verbose);
+
+        ConcurrentLinkedQueue<Long> queueWaits = new ConcurrentLinkedQueue<>();
+        Set<String> workerThreads = ConcurrentHashMap.newKeySet();
+        AtomicInteger geminiRetries = new AtomicInteger();
+        AtomicInteger tasmotaRetries = new AtomicInteger();
+        TasmotaController.StageListener listener = new TasmotaController.StageListener() {
+            @Override
+            public void onTaskStarted(long queueWaitNanos) {
+                queueWaits.add(TimeUnit.NANOSECONDS.toMillis(queueWaitNanos));
+                workerThreads.add(Thread.currentThread().getName());
+            }
+
+            @Override
+            public void onRetry(String stage, int attempt, java.io.IOException cause) {
+                ("gemini".equals(stage) ? geminiRetries : tasmotaRetries).incrementAndGet();
+            }
+        };
+
+        List<ExecutorService> workers = new ArrayList<>();
+        List<TasmotaController> controllers = new ArrayList<>();
+        gemini.start();
+        fleet.start();
+        try {
+            for (int i = 0; i < config.devices; i++) {
+                final int device = i;
+                AtomicInteger n = new AtomicInteger();
+                ExecutorService worker = Executors.newFixedThreadPool(config.workersPerController,
+                        r -> new Thread(r, "controller-" + device + "-worker-" + n.incrementAndGet()));
+                workers.add(worker);
+
+                TasmotaController controller = new TasmotaController("mock-key", platform, worker);
+                controller.setGeminiBaseUrl(gemini.baseUrl());
+                controller.setTasmotaIpAddress(fleet.address(i));
+                controller.setIsSimulating(false);
+                controller.setStageListener(listener);
+                controllers.add(controller);
+            }
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+
+            CountDownLatch done = new CountDownLatch(config.requests);
+            ConcurrentLinkedQueue<Long> endToEnd = new ConcurrentLinkedQueue<>();
+            AtomicInteger ok = new AtomicInteger();
+            AtomicInteger fail = new AtomicInteger();
+            int presetEvery = config.presetRatio > 0 ? (int) Math.max(1, Math.round(1.0 / config.presetRatio)) : 0;
+
+            long start = System.nanoTime();
+            for (int r = 0; r < config.requests; r++) {
+                final long submittedAt = System.nanoTime();
+                TasmotaController.ControllerCallback callback = new TasmotaController.ControllerCallback() {
+                    @Override
+                    public void onSuccess(String command, String tasmotaResponse, String geminiExplanation, int colorRgb) {
+                        finish(true);
+                    }
+
+                    @Override
+                    public void onFailure(String message) {
+                        finish(false);
+                    }
+
+                    private void finish(boolean success) {
+                        endToEnd.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submittedAt));
+                        (success ? ok : fail).incrementAndGet();
+                        done.countDown();
+                    }
+                };
+
+                TasmotaController controller = controllers.get(r % config.devices);
+                if (presetEvery > 0 && r % presetEvery == 0) {
+                    controller.sendPreset(PRESETS[r % PRESETS.length], 10 + r % 91, 153 + r % 348, callback);
+                } else {
+                    controller.processMoodAndControlLight(MOODS[r % MOODS.length], callback);
+                }
+            }
+
+            if (!done.await(config.timeoutSeconds, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("하네스 시간 초과: 미완료 " + done.getCount() + "건");
+            }
+            long wallNanos = System.nanoTime() - start;
+
+            Report report = new Report();
+            report.submitted = config.requests;
+            report.succeeded = ok.get();
+            report.failed = fail.get();
+            report.wallMillis = TimeUnit.NANOSECONDS.toMillis(wallNanos);
+            report.throughputPerSec = config.requests / (wallNanos / 1_000_000_000.0);
+            report.endToEndMillis = sorted(endToEnd);
+            report.queueWaitMillis = sorted(queueWaits);
+            report.geminiRetries = geminiRetries.get();
+            report.tasmotaRetries = tasmotaRetries.get();
+            report.workerThreadsUsed = workerThreads.size();
+            report.peakJvmThreads = threads.getPeakThreadCount();
+            report.geminiRequests = gemini.requestCount();
+            report.geminiErrors = gemini.errorCount();
+            report.deviceCommands = fleet.totalCommands();
+            report.deviceFailures = fleet.totalFailures();
+            return report;
+        } finally {
+            for (ExecutorService worker : workers) worker.shutdownNow();
+            platform.shutdown();
+            fleet.stop();
+            gemini.stop();
+        }
+    }
+
+    private static long[] sorted(ConcurrentLinkedQueue<Long> values) {
+        long[] out = new long[values.size()];
+        int i = 0;
+        for (Long v : values) out[i++] = v;
+        Arrays.sort(out);
+        return out;
+    }
+
+    /** nearest-rank 백분위 (p: 0-100) */
+    static long percentile(long[] sortedValues, double p) {
+        if (sortedValues.length == 0) return 0L;
+        int rank = (int) Math.ceil(p / 100.0 * sortedValues.length);
+        return sortedValues[Math.min(sortedValues.length - 1, Math.max(0, rank - 1))];
+    }
+}
@@ -0,0 +1,43 @@
+package com.baiktown.sentilight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** 소규모 설정으로 하네스를 돌려 계측 값이 일관되는지 확인 */
+public class LoadHarnessTest {
+
+    @Test
+    public void burstAgainstMocks_reportsConsistentMetrics() throws Exception {
+        LoadHarness.Config config = new LoadHarness.Config();
+        config.devices = 3;
+        config.requests = 30;
+        config.geminiLatency = LatencyModel.fixed(5);
+        config.geminiErrorRate = 0.2;
+        config.deviceLatency = LatencyModel.uniform(1, 4);
+        config.deviceFailureRate = 0.1;
+
+        LoadHarness.Report report = LoadHarness.run(config);
+
+        assertEquals(30, report.submitted);
+        assertEquals(30, report.succeeded + report.failed);
+        assertEquals(30, report.endToEndMillis.length);
+        assertEquals(30, report.queueWaitMillis.length);
+        assertEquals(3, report.workerThreadsUsed);
+        // 재시도는 실패한 호출에서만 발생
+        assertTrue(report.geminiRetries <= report.geminiErrors);
+        assertTrue(report.tasmotaRetries <= report.deviceFailures);
+        assertTrue(report.endToEndPercentile(50) <= report.endToEndPercentile(99));
+        assertTrue(report.throughputPerSec > 0);
+    }
+
+    @Test
+    public void percentile_usesNearestRank() {
+        long[] values = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertEquals(5, LoadHarness.percentile(values, 50));
+        assertEquals(9, LoadHarness.percentile(values, 90));
+        assertEquals(10, LoadHarness.percentile(values, 100));
+        assertEquals(0, LoadHarness.percentile(new long[0], 50));
+    }
+}
@@ -0,0 +1,163 @@
+package com.baiktown.sentilight;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 로컬 Gemini generateContent 대역 서버
+ * - POST {base}models/{model}:generateContent 에 대해 [COMMAND: ...] [EXPLANATION: ...] 텍스트를 반환
+ * - 배치 프롬프트(#번호 방: ... / 기분: '...')에는 {"scenes":[...]} JSON 텍스트를 반환
+ *   (setBatchIndexOffset / setEchoBatchRoom 으로 번호를 어긋나게 매기는 모델을 흉내 낼 수 있음)
+ * - 지연 분포(LatencyModel)와 오류율(HTTP 500 비율)을 설정 가능
+ */
+public class MockGeminiServer {
+
+    private static final Pattern MOOD = Pattern.compile("사용자 기분: '(.*?)'", Pattern.DOTALL);
+    private static final Pattern BATCH_ITEM = Pattern.compile("#(\\d+) 방: (.*?) / 기분: '(.*?)'\n");
+
+    private final HttpServer server;
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+    private final Gson gson = new Gson();
+    private final Random random;
+    private final LatencyModel latency;
+    private final double errorRate;
+
+    private volatile int batchIndexOffset = 0;
+    private volatile boolean echoBatchRoom = true;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+
+    public MockGeminiServer(LatencyModel latency, double errorRate, long seed) throws IOException {
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.random = new Random(seed);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(pool);
+    }
+
+    public void start() { server.start(); }
+
+    public void stop() {
+        server.stop(0);
+        pool.shutdownNow();
+    }
+
+    /** TasmotaController.setGeminiBaseUrl(...)에 넘길 주소 */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/";
+    }
+
+    public void setBatchIndexOffset(int offset) { this.batchIndexOffset = offset; }
+    public void setEchoBatchRoom(boolean echo) { this.echoBatchRoom = echo; }
+
+    public int requestCount() { return requests.get(); }
+    public int errorCount() { return errors.get(); }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String requestBody;
+        try (InputStream in = exchange.getRequestBody()) {
+            requestBody = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        long delay;
+        boolean fail;
+        synchronized (random) {
+            delay = Math.max(0L, latency.nextDelayMillis(random));
+            fail = random.nextDouble() < errorRate;
+        }
+        sleep(delay);
+
+        if (fail) {
+            errors.incrementAndGet();
+            respond(exchange, 500, "{\"error\":{\"code\":500,\"message\":\"mock internal error\"}}");
+            return;
+        }
+        respond(exchange, 200, gson.toJson(candidateResponse(generateText(promptOf(requestBody)))));
+    }
+
+    /** 프롬프트 본문에서 기분 문자열을 꺼내 결정적(해시 기반) 명령을 생성 */
+    protected String generateText(String prompt) {
+        Matcher batch = BATCH_ITEM.matcher(prompt);
+        if (batch.find()) {
+            JsonArray scenes = new JsonArray();
+            do {
+                JsonObject item = new JsonObject();
+                item.addProperty("index", Integer.parseInt(batch.group(1)) + batchIndexOffset);
+                if (echoBatchRoom) item.addProperty("room", batch.group(2));
+                item.addProperty("command", commandFor(batch.group(2) + batch.group(3)));
+                item.addProperty("explanation", batch.group(2) + " '" + batch.group(3) + "' 기분에 맞춘 목 응답입니다.");
+                scenes.add(item);
+            } while (batch.find());
+            JsonObject root = new JsonObject();
+            root.add("scenes", scenes);
+            return "```json\n" + gson.toJson(root) + "\n```";
+        }
+
+        Matcher m = MOOD.matcher(prompt);
+        String mood = m.find() ? m.group(1) : prompt;
+        return "[COMMAND: " + commandFor(mood) + "] "
+                + "[EXPLANATION: '" + mood + "' 기분에 맞춘 목 응답입니다.]";
+    }
+
+    static String commandFor(String seed) {
+        int h = seed.hashCode() & 0x7fffffff;
+        return "HSBCOLOR " + (h % 360) + "," + (40 + h % 61) + "," + (30 + h % 71)
+                + ";Dimmer " + (10 + h % 91) + ";CT " + (153 + h % 348);
+    }
+
+    protected String promptOf(String requestBody) {
+        JsonObject json = gson.fromJson(requestBody, JsonObject.class);
+        return json.getAsJsonArray("contents").get(0).getAsJsonObject()
+                .getAsJsonArray("parts").get(0).getAsJsonObject()
+                .get("text").getAsString();
+    }
+
+    private static JsonObject candidateResponse(String text) {
+        JsonObject part = new JsonObject();
+        part.addProperty("text", text);
+        JsonArray parts = new JsonArray();
+        parts.add(part);
+        JsonObject content = new JsonObject();
+        content.addProperty("role", "model");
+        content.add("parts", parts);
+        JsonObject candidate = new JsonObject();
+        candidate.add("content", content);
+        JsonArray candidates = new JsonArray();
+        candidates.add(candidate);
+        JsonObject root = new JsonObject();
+        root.add("candidates", candidates);
+        return root;
+    }
+
+    static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    static void sleep(long millis) {
+        if (millis <= 0) return;
+        try { Thread.sleep(millis); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+}
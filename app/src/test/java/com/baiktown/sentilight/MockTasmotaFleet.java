@@ -0,0 +1,102 @@
+package com.baiktown.sentilight;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 로컬 Tasmota 장치 묶음 대역
+ * - 장치마다 별도 포트의 HTTP 서버(GET /cm?cmnd=...)를 띄움
+ * - 장치별 응답 지연과 실패율(HTTP 503 비율)을 설정 가능
+ */
+public class MockTasmotaFleet {
+
+    /** 장치 하나의 동작 설정 */
+    public static class DeviceProfile {
+        final LatencyModel latency;
+        final double failureRate;
+
+        public DeviceProfile(LatencyModel latency, double failureRate) {
+            this.latency = latency;
+            this.failureRate = failureRate;
+        }
+    }
+
+    private final List<Device> devices = new ArrayList<>();
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+
+    public MockTasmotaFleet(List<DeviceProfile> profiles, long seed) throws IOException {
+        for (int i = 0; i < profiles.size(); i++) {
+            devices.add(new Device(profiles.get(i), new Random(seed + i)));
+        }
+    }
+
+    public void start() {
+        for (Device d : devices) d.server.start();
+    }
+
+    public void stop() {
+        for (Device d : devices) d.server.stop(0);
+        pool.shutdownNow();
+    }
+
+    public int size() { return devices.size(); }
+
+    /** TasmotaController.setTasmotaIpAddress(...)에 넘길 "host:port" */
+    public String address(int index) {
+        return "127.0.0.1:" + devices.get(index).server.getAddress().getPort();
+    }
+
+    public int commandCount(int index) { return devices.get(index).commands.get(); }
+    public int failureCount(int index) { return devices.get(index).failures.get(); }
+
+    public int totalCommands() {
+        int sum = 0;
+        for (Device d : devices) sum += d.commands.get();
+        return sum;
+    }
+
+    public int totalFailures() {
+        int sum = 0;
+        for (Device d : devices) sum += d.failures.get();
+        return sum;
+    }
+
+    private class Device {
+        final HttpServer server;
+        final DeviceProfile profile;
+        final Random random;
+        final AtomicInteger commands = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+
+        Device(DeviceProfile profile, Random random) throws IOException {
+            this.profile = profile;
+            this.random = random;
+            this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            this.server.setExecutor(pool);
+            this.server.createContext("/cm", exchange -> {
+                commands.incrementAndGet();
+                long delay;
+                boolean fail;
+                synchronized (this.random) {
+                    delay = Math.max(0L, profile.latency.nextDelayMillis(this.random));
+                    fail = this.random.nextDouble() < profile.failureRate;
+                }
+                MockGeminiServer.sleep(delay);
+                if (fail) {
+                    failures.incrementAndGet();
+                    MockGeminiServer.respond(exchange, 503, "{\"WARNING\":\"mock device busy\"}");
+                } else {
+                    MockGeminiServer.respond(exchange, 200, "{\"POWER\":\"ON\",\"Dimmer\":70}");
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.baiktown.sentilight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/** 가상 시계로 긴 예약을 즉시 재생하며 SceneScheduler 동작 확인 */
+public class SceneSchedulerTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final ControllerPlatform PLATFORM = new JvmPlatform(false);
+    private static final SceneScheduler.Dispatcher NO_DISPATCH = (device, cmd) -> CompletableFuture.completedFuture(null);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** 가상 시계 + 단일 알람: advanceTo()가 알람 시각으로 시간을 옮기며 순서대로 실행 */
+    static final class VirtualClock implements SceneScheduler.Clock, SceneScheduler.Wakeup {
+        long now;
+        long pendingAt = -1L;
+        Runnable pending;
+        int wakeups;
+
+        VirtualClock(long start) { this.now = start; }
+
+        @Override public long nowMillis() { return now; }
+
+        @Override
+        public void setNext(long atMillis, Runnable onWake) {
+            pendingAt = atMillis;
+            pending = onWake;
+        }
+
+        @Override
+        public void cancel() {
+            pendingAt = -1L;
+            pending = null;
+        }
+
+        void advanceTo(long target) {
+            while (pending != null && pendingAt <= target) {
+                now = Math.max(now, pendingAt);
+                Runnable r = pending;
+                pending = null;
+                pendingAt = -1L;
+                wakeups++;
+                r.run();
+            }
+            now = Math.max(now, target);
+        }
+    }
+
+    static final class Dispatch {
+        final long at;
+        final String device;
+        final String command;
+
+        Dispatch(long at, String device, String command) {
+            this.at = at;
+            this.device = device;
+            this.command = command;
+        }
+    }
+
+    /** 전송 시각과 함께 기록하고 즉시 완료 */
+    static SceneScheduler.Dispatcher recordTo(List<Dispatch> sent, VirtualClock clock) {
+        return (device, cmd) -> {
+            sent.add(new Dispatch(clock.now, device, cmd));
+            return CompletableFuture.completedFuture(null);
+        };
+    }
+
+    @Test
+    public void circadianWeek_mergesDevicesIntoOneWakeupPerEvent() throws Exception {
+        VirtualClock clock = new VirtualClock(0L); // 1970-01-01T00:00Z
+        List<Dispatch> sent = new ArrayList<>();
+        SceneScheduler scheduler = new SceneScheduler(clock, clock,
+                recordTo(sent, clock), null, MINUTE, PLATFORM);
+        scheduler.start();
+        for (String room : new String[]{"거실", "침실", "서재"}) {
+            scheduler.scheduleCircadian(room, ZoneOffset.UTC);
+        }
+
+        clock.advanceTo(7 * DAY);
+
+        // 하루 6개 시각 x 7일, 세 방이 같은 시각이므로 깨어남은 시각당 1회
+        assertEquals(6 * 7, clock.wakeups);
+        assertEquals(6 * 7 * 3, sent.size());
+        assertEquals("Backlog CT 320", sent.get(0).command);
+        assertEquals(TimeUnit.MINUTES.toMillis(6 * 60 + 30), sent.get(0).at);
+        assertEquals(18, scheduler.size());
+    }
+
+    @Test
+    public void nearSimultaneousEvents_becomeOneBacklogPerDevice() throws Exception {
+        VirtualClock clock = new VirtualClock(0L);
+        List<Dispatch> sent = new ArrayList<>();
+        SceneScheduler scheduler = new SceneScheduler(clock, clock,
+                recordTo(sent, clock), null, MINUTE, PLATFORM);
+        scheduler.start();
+
+        scheduler.schedule("거실", LightCommand.scene(30, 80, 60, 50, 300), 10 * MINUTE, 0L);
+        scheduler.schedule("거실", LightCommand.ct(400), 10 * MINUTE + 20_000L, 0L);
+        scheduler.schedule("침실", LightCommand.ct(450), 10 * MINUTE + 40_000L, 0L);
+        scheduler.schedule("침실", LightCommand.ct(200), 30 * MINUTE, 0L);
+        assertEquals(10 * MINUTE, scheduler.nextWakeupMillis());
+
+        clock.advanceTo(DAY);
+
+        assertEquals(2, clock.wakeups);
+        assertEquals(3, sent.size());
+        // 같은 하위 명령(CT)은 나중 예약 값으로 대체
+        assertEquals("거실", sent.get(0).device);
+        assertEquals("Backlog HSBCOLOR 30,80,60; Dimmer 50; CT 400", sent.get(0).command);
+        assertEquals("Backlog CT 450", sent.get(1).command);
+        assertEquals(10 * MINUTE, sent.get(1).at);
+        assertEquals("Backlog CT 200", sent.get(2).command);
+        assertEquals(0, scheduler.size());
+        assertEquals(-1L, scheduler.nextWakeupMillis());
+    }
+
+    @Test
+    public void restartAfterProcessDeath_catchesUpOnceAndDropsStaleOneShots() throws Exception {
+        File state = new File(tmp.getRoot(), "schedule.json");
+        VirtualClock clock = new VirtualClock(0L);
+        List<Dispatch> sent = new ArrayList<>();
+
+        SceneScheduler first = new SceneScheduler(clock, clock,
+                recordTo(sent, clock), state, MINUTE, PLATFORM);
+        first.start();
+        first.schedule("거실", LightCommand.ct(250), 60 * MINUTE, 2 * 60 * MINUTE); // 2시간마다
+        first.schedule("거실", LightCommand.ct(500), 90 * MINUTE, 0L);             // 1회성
+        first.schedule("침실", LightCommand.ct(300), 10 * 60 * MINUTE, 0L);        // 재시작 후 미래
+        String cancelled = first.schedule("서재", LightCommand.ct(153), 20 * MINUTE, 0L);
+        assertTrue(first.cancel(cancelled));
+        // 프로세스 종료: 알람 소멸, 시간은 계속 흐름
+        clock.cancel();
+        clock.now = 9 * 60 * MINUTE;
+
+        VirtualClock resumed = new VirtualClock(clock.now);
+        SceneScheduler second = new SceneScheduler(resumed, resumed,
+                recordTo(sent, resumed), state, MINUTE, PLATFORM);
+        second.start();
+
+        // 놓친 반복 회차(5회)는 1회로 합쳐 즉시 적용, 7.5시간 지난 1회성 예약은 버림
+        assertEquals(1, sent.size());
+        assertEquals("Backlog CT 250", sent.get(0).command);
+        assertEquals(9 * 60 * MINUTE, sent.get(0).at);
+        assertEquals(2, second.size());
+        assertEquals(10 * 60 * MINUTE, second.nextWakeupMillis());
+
+        resumed.advanceTo(11 * 60 * MINUTE);
+        assertEquals(3, sent.size());
+        assertEquals("침실", sent.get(1).device);
+        assertEquals("Backlog CT 250", sent.get(2).command);
+        assertEquals(11 * 60 * MINUTE, sent.get(2).at);
+    }
+
+    @Test
+    public void restartAfterSeveralDays_appliesLatestMissedOccurrence() throws Exception {
+        File state = new File(tmp.getRoot(), "schedule.json");
+        VirtualClock clock = new VirtualClock(0L);
+        List<Dispatch> sent = new ArrayList<>();
+
+        SceneScheduler first = new SceneScheduler(clock, clock,
+                recordTo(sent, clock), state, MINUTE, PLATFORM);
+        first.start();
+        first.scheduleCircadian("거실", ZoneOffset.UTC);
+        clock.advanceTo(DAY + 21 * HOUR); // 1일차 20:00 (CT 380) 까지 적용된 뒤 종료
+        assertEquals("Backlog CT 380", sent.get(sent.size() - 1).command);
+        clock.cancel();
+        sent.clear();
+
+        // 3일차 13:00 재시작: 마지막으로 도래한 예약은 12:00 (CT 153)
+        VirtualClock resumed = new VirtualClock(3 * DAY + 13 * HOUR);
+        SceneScheduler second = new SceneScheduler(resumed, resumed,
+                recordTo(sent, resumed), state, MINUTE, PLATFORM);
+        second.start();
+
+        assertEquals(1, sent.size());
+        assertEquals("Backlog CT 153", sent.get(0).command);
+        assertEquals(3 * DAY + 17 * HOUR, second.nextWakeupMillis());
+    }
+
+    @Test
+    public void persistFailureOnWake_isLogged() throws Exception {
+        File stateDir = tmp.newFolder("state");
+        File state = new File(stateDir, "schedule.json");
+        List<String> errors = new CopyOnWriteArrayList<>();
+        ControllerPlatform recording = new JvmPlatform(false) {
+            @Override
+            public void logE(String tag, String msg, Throwable tr) {
+                errors.add(msg);
+            }
+        };
+        VirtualClock clock = new VirtualClock(0L);
+        SceneScheduler scheduler = new SceneScheduler(clock, clock, NO_DISPATCH, state, MINUTE, recording);
+        scheduler.start();
+        scheduler.schedule("거실", LightCommand.ct(300), 10 * MINUTE, 0L);
+
+        // 저장 위치가 사라져 깨어남 후 저장이 실패하는 상황
+        assertTrue(state.delete());
+        assertTrue(stateDir.delete());
+        clock.advanceTo(20 * MINUTE);
+
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).startsWith("예약 상태 저장 실패"));
+    }
+
+    @Test
+    public void dailyAcrossDstChange_keepsLocalWallClockTime() throws Exception {
+        ZoneId berlin = ZoneId.of("Europe/Berlin");
+        File state = new File(tmp.getRoot(), "schedule.json");
+        // 2026-03-29 02:00 CET -> 03:00 CEST
+        VirtualClock clock = new VirtualClock(at(LocalDate.of(2026, 3, 25), LocalTime.MIDNIGHT, berlin));
+        List<Dispatch> sent = new ArrayList<>();
+        SceneScheduler first = new SceneScheduler(clock, clock, recordTo(sent, clock), state, MINUTE, PLATFORM);
+        first.start();
+        first.scheduleDaily("거실", LightCommand.ct(320), LocalTime.of(6, 30), berlin);
+
+        clock.advanceTo(at(LocalDate.of(2026, 4, 2), LocalTime.MIDNIGHT, berlin));
+
+        assertEquals(8, sent.size()); // 3/25 ~ 4/1
+        for (int i = 0; i < sent.size(); i++) {
+            ZonedDateTime local = Instant.ofEpochMilli(sent.get(i).at).atZone(berlin);
+            assertEquals(LocalDate.of(2026, 3, 25).plusDays(i), local.toLocalDate());
+            assertEquals(LocalTime.of(6, 30), local.toLocalTime());
+        }
+        // 전환일 전후 간격은 23시간
+        assertEquals(23 * HOUR, sent.get(4).at - sent.get(3).at);
+
+        // 저장된 지역 시각/시간대로 재시작해도 다음 회차는 06:30
+        clock.cancel();
+        VirtualClock resumed = new VirtualClock(at(LocalDate.of(2026, 4, 2), LocalTime.NOON, berlin));
+        SceneScheduler second = new SceneScheduler(resumed, resumed, recordTo(sent, resumed), state, MINUTE, PLATFORM);
+        second.start();
+        assertEquals(9, sent.size());
+        assertEquals(at(LocalDate.of(2026, 4, 3), LocalTime.of(6, 30), berlin), second.nextWakeupMillis());
+    }
+
+    @Test
+    public void persistFailureOnScheduleOrCancel_rollsBack() throws Exception {
+        File stateDir = tmp.newFolder("state");
+        File state = new File(stateDir, "schedule.json");
+        VirtualClock clock = new VirtualClock(0L);
+        SceneScheduler scheduler = new SceneScheduler(clock, clock, NO_DISPATCH, state, MINUTE, PLATFORM);
+        scheduler.start();
+        String id = scheduler.schedule("거실", LightCommand.ct(300), 10 * MINUTE, 0L);
+
+        assertTrue(state.delete());
+        assertTrue(stateDir.delete());
+        try {
+            scheduler.schedule("침실", LightCommand.ct(400), 5 * MINUTE, 0L);
+            fail("저장 실패가 전달되어야 합니다.");
+        } catch (IOException expected) {
+            // 예상된 실패
+        }
+        try {
+            scheduler.cancel(id);
+            fail("저장 실패가 전달되어야 합니다.");
+        } catch (IOException expected) {
+            // 예상된 실패
+        }
+
+        assertEquals(1, scheduler.size());
+        assertEquals(10 * MINUTE, scheduler.nextWakeupMillis());
+        assertFalse(state.exists());
+    }
+
+    private static long at(LocalDate date, LocalTime time, ZoneId zone) {
+        return ZonedDateTime.of(date, time, zone).toInstant().toEpochMilli();
+    }
+
+    @Test
+    public void lightCommand_clampsSceneAndCtRanges() {
+        assertEquals("HSBCOLOR 359,100,0;Dimmer 100;CT 153", LightCommand.scene(400, 150, -5, 120, 100).command());
+        assertEquals("CT 500", LightCommand.ct(900).command());
+        assertEquals("Dimmer 50;CT 300", LightCommand.of(" Dimmer 50 ;  CT 300! ").command());
+    }
+}